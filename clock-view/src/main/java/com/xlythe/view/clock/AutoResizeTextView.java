@@ -16,6 +16,7 @@ package com.xlythe.view.clock;
  */
 
 import android.content.Context;
+import android.graphics.Typeface;
 import android.text.Layout.Alignment;
 import android.text.StaticLayout;
 import android.text.TextPaint;
@@ -24,8 +25,12 @@ import android.util.TypedValue;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatTextView;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Text view that auto adjusts text size to fit within the view.
  * If the text size equals the minimum text size and still does not
@@ -39,6 +44,10 @@ public class AutoResizeTextView extends AppCompatTextView {
     public static final float MIN_TEXT_SIZE = 0;
     // Our ellipse string
     private static final String mEllipsis = "...";
+    // Text sizes within this many pixels of each other are considered equal while searching
+    private static final float TEXT_SIZE_PRECISION = 0.5f;
+    // Number of fitted text sizes remembered per view
+    private static final int MAX_CACHED_TEXT_SIZES = 16;
     // Registered resize listener
     private OnTextResizeListener mTextResizeListener;
     // Flag for text and/or size changes to force a resize
@@ -55,6 +64,16 @@ public class AutoResizeTextView extends AppCompatTextView {
     private float mSpacingAdd = 0.0f;
     // Add ellipsis to text that overflows at the smallest text size
     private boolean mAddEllipsis = true;
+    // Reused while measuring, as TextView#getPaint() must be treated as read-only
+    private final TextPaint mScratchPaint = new TextPaint();
+    // Fitted text sizes. With tabular digits, text that only differs by its digits (eg. a ticking
+    // clock) shares a size
+    private final Map<FitKey, Float> mFittedTextSizes = new LinkedHashMap<FitKey, Float>(MAX_CACHED_TEXT_SIZES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FitKey, Float> eldest) {
+            return size() > MAX_CACHED_TEXT_SIZES;
+        }
+    };
 
     // Default constructor override
     public AutoResizeTextView(Context context) {
@@ -132,6 +151,9 @@ public class AutoResizeTextView extends AppCompatTextView {
     @Override
     public void setLineSpacing(float add, float mult) {
         super.setLineSpacing(add, mult);
+        if (mSpacingMult != mult || mSpacingAdd != add) {
+            mFittedTextSizes.clear();
+        }
         mSpacingMult = mult;
         mSpacingAdd = add;
     }
@@ -176,6 +198,7 @@ public class AutoResizeTextView extends AppCompatTextView {
      */
     public void setMinTextSize(float minTextSize) {
         mMinTextSize = minTextSize;
+        mFittedTextSizes.clear();
         requestLayout();
         invalidate();
     }
@@ -257,27 +280,24 @@ public class AutoResizeTextView extends AppCompatTextView {
 
             // Store the current text size
             float oldTextSize = textPaint.getTextSize();
-            float targetTextSize = mTextSize;
-
-            // Get the required text height
-            int textHeight = getTextHeight(text, textPaint, width, targetTextSize);
 
-            // Increase the text size as much as possible
+            // Find the largest text size that fits, unless we've already fit text of the same shape
             float maxTextSize = mMaxTextSize > 0 ? mMaxTextSize : (height == Integer.MAX_VALUE ? mTextSize : 1000f);
-            while (textHeight < height && targetTextSize < maxTextSize) {
-                targetTextSize = Math.min(targetTextSize + 2, maxTextSize);
-                textHeight = getTextHeight(text, textPaint, width, targetTextSize);
-            }
-
-            // Until we either fit within our text view or we had reached our min text size, incrementally try smaller sizes
-            while (textHeight > height && targetTextSize > mMinTextSize) {
-                targetTextSize = Math.max(targetTextSize - 2, mMinTextSize);
-                textHeight = getTextHeight(text, textPaint, width, targetTextSize);
+            FitKey key = new FitKey(text, width, height, textPaint, maxTextSize);
+            Float cachedTextSize = mFittedTextSizes.get(key);
+            float targetTextSize;
+            if (cachedTextSize != null) {
+                targetTextSize = cachedTextSize;
+            } else {
+                targetTextSize = findLargestTextSize(text, textPaint, width, height, Math.min(mMinTextSize, maxTextSize), maxTextSize);
+                mFittedTextSizes.put(key, targetTextSize);
             }
 
             // If we had reached our minimum text size and still don't fit, append an ellipsis
-            if (mAddEllipsis && targetTextSize == mMinTextSize && textHeight > height) {
-                TextPaint paint = new TextPaint(textPaint);
+            if (mAddEllipsis && targetTextSize == mMinTextSize && getTextHeight(text, textPaint, width, targetTextSize) > height) {
+                TextPaint paint = mScratchPaint;
+                paint.set(textPaint);
+                paint.setTextSize(targetTextSize);
                 StaticLayout layout = new StaticLayout(text, paint, width, Alignment.ALIGN_NORMAL, mSpacingMult, mSpacingAdd, false);
                 if (layout.getLineCount() > 0) {
                     int lastLine = layout.getLineForVertical(height);
@@ -288,12 +308,7 @@ public class AutoResizeTextView extends AppCompatTextView {
                         setText("");
                     } else {
                         int start = layout.getLineStart(lastLine);
-                        int end = layout.getLineEnd(lastLine);
-                        float lineWidth = layout.getLineWidth(lastLine);
-                        float ellipseWidth = paint.measureText(mEllipsis);
-                        while (width < lineWidth + ellipseWidth && end > start) {
-                            lineWidth = paint.measureText(text.subSequence(start, --end + 1).toString());
-                        }
+                        int end = findEllipsisStart(text, paint, start, layout.getLineEnd(lastLine), width - paint.measureText(mEllipsis));
                         if (end <= start) {
                             setText("");
                         } else {
@@ -322,21 +337,116 @@ public class AutoResizeTextView extends AppCompatTextView {
         }
     }
 
+    // Binary search for the largest text size in [minTextSize, maxTextSize] whose height fits
+    private float findLargestTextSize(CharSequence text, TextPaint textPaint, int width, int height, float minTextSize, float maxTextSize) {
+        if (getTextHeight(text, textPaint, width, maxTextSize) <= height) {
+            return maxTextSize;
+        }
+        if (getTextHeight(text, textPaint, width, minTextSize) > height) {
+            return minTextSize;
+        }
+
+        // Invariant: lo fits and hi does not
+        float lo = minTextSize;
+        float hi = maxTextSize;
+        while (hi - lo > TEXT_SIZE_PRECISION) {
+            float mid = (lo + hi) / 2f;
+            if (getTextHeight(text, textPaint, width, mid) <= height) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Binary search for the end of the longest prefix of [start, end) that fits within maxWidth
+    private static int findEllipsisStart(CharSequence text, TextPaint paint, int start, int end, float maxWidth) {
+        int lo = start;
+        int hi = end;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (paint.measureText(text, start, mid) <= maxWidth) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
     // Set the text size of the text paint object and use a static layout to render text off screen before measuring
     protected int getTextHeight(CharSequence source, TextPaint paint, int width, float textSize) {
-        // modified: make a copy of the original TextPaint object for measuring
+        // modified: measure with a copy of the original TextPaint object
         // (apparently the object gets modified while measuring, see also the
         // docs for TextView.getPaint() (which states to access it read-only)
-        TextPaint paintCopy = new TextPaint(paint);
+        mScratchPaint.set(paint);
 
         // Update the text paint object
-        paintCopy.setTextSize(textSize);
+        mScratchPaint.setTextSize(textSize);
 
         // Measure using a static layout
-        StaticLayout layout = new StaticLayout(source, paintCopy, width, Alignment.ALIGN_NORMAL, mSpacingMult, mSpacingAdd, true);
+        StaticLayout layout = new StaticLayout(source, mScratchPaint, width, Alignment.ALIGN_NORMAL, mSpacingMult, mSpacingAdd, true);
         return layout.getHeight();
     }
 
+    // Identifies text that will be fit to the same size. With tabular digits ("tnum"), every
+    // digit has the same advance, so digits are interchangeable and a ticking clock doesn't need
+    // to be fit again every time a digit changes. Proportional digits are kept as they are.
+    private static final class FitKey {
+        private final String mShape;
+        private final int mWidth;
+        private final int mHeight;
+        @Nullable private final Typeface mTypeface;
+        private final float mLetterSpacing;
+        @Nullable private final String mFontFeatureSettings;
+        private final float mMaxTextSize;
+
+        FitKey(CharSequence text, int width, int height, TextPaint paint, float maxTextSize) {
+            String fontFeatureSettings = paint.getFontFeatureSettings();
+            boolean tabularDigits = fontFeatureSettings != null && fontFeatureSettings.contains("tnum");
+            char[] shape = new char[text.length()];
+            for (int i = 0; i < shape.length; i++) {
+                char c = text.charAt(i);
+                shape[i] = tabularDigits && Character.isDigit(c) ? '0' : c;
+            }
+            mShape = new String(shape);
+            mWidth = width;
+            mHeight = height;
+            mTypeface = paint.getTypeface();
+            mLetterSpacing = paint.getLetterSpacing();
+            mFontFeatureSettings = fontFeatureSettings;
+            mMaxTextSize = maxTextSize;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (!(o instanceof FitKey)) {
+                return false;
+            }
+            FitKey key = (FitKey) o;
+            return mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && mMaxTextSize == key.mMaxTextSize
+                    && mLetterSpacing == key.mLetterSpacing
+                    && mShape.equals(key.mShape)
+                    && (mTypeface == null ? key.mTypeface == null : mTypeface.equals(key.mTypeface))
+                    && (mFontFeatureSettings == null ? key.mFontFeatureSettings == null : mFontFeatureSettings.equals(key.mFontFeatureSettings));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mShape.hashCode();
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + (mTypeface == null ? 0 : mTypeface.hashCode());
+            result = 31 * result + Float.floatToIntBits(mLetterSpacing);
+            result = 31 * result + (mFontFeatureSettings == null ? 0 : mFontFeatureSettings.hashCode());
+            result = 31 * result + Float.floatToIntBits(mMaxTextSize);
+            return result;
+        }
+    }
+
     // Interface for resize notifications
     public interface OnTextResizeListener {
         void onTextResize(TextView textView, float oldSize, float newSize);
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.DashPathEffect;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
@@ -17,13 +18,17 @@ import java.util.List;
 
 public class ChartDrawable extends ComplicationDrawable {
     private final float mWeightSum;
-    private final List<Float> mWeights;
-    private final List<Integer> mColors;
+    private final float[] mWeights;
+    @ColorInt private final int[] mColors;
 
     private final Paint mOutlinePaint = new Paint();
     private final Paint mForegroundPaint = new Paint();
     private final RectF mPieChartBounds = new RectF();
 
+    // One wedge per element, plus a single path holding every wedge's outline. Rebuilt on bounds changes.
+    private final Path[] mSegmentPaths;
+    private final Path mOutlinePath = new Path();
+
     ChartDrawable(
             Context context,
             @Nullable Drawable icon,
@@ -31,13 +36,18 @@ public class ChartDrawable extends ComplicationDrawable {
             @Nullable CharSequence title,
             @ColorInt int backgroundColor,
             float weightSum,
-            List<Float> weights,
-            List<Integer> colors) {
+            float[] weights,
+            @ColorInt int[] colors) {
         super(context, icon, text, title);
         mWeightSum = weightSum;
         mWeights = weights;
         mColors = colors;
 
+        mSegmentPaths = new Path[weights.length];
+        for (int i = 0; i < mSegmentPaths.length; i++) {
+            mSegmentPaths[i] = new Path();
+        }
+
         mOutlinePaint.setColor(backgroundColor);
         mOutlinePaint.setAntiAlias(true);
         mOutlinePaint.setStyle(Paint.Style.STROKE);
@@ -54,17 +64,11 @@ public class ChartDrawable extends ComplicationDrawable {
             return;
         }
 
-        int startingAngle = -90;
-        for (int i = 0; i < mWeights.size(); i++) {
-            float weight = mWeights.get(i);
-            @ColorInt int color = mColors.get(i);
-            float degrees = 360f / mWeightSum * weight;
-
-            mForegroundPaint.setColor(color);
-            canvas.drawArc(mPieChartBounds, startingAngle, degrees, true, mForegroundPaint);
-            canvas.drawArc(mPieChartBounds, startingAngle, degrees, true, mOutlinePaint);
-            startingAngle += degrees;
+        for (int i = 0; i < mSegmentPaths.length; i++) {
+            mForegroundPaint.setColor(mColors[i]);
+            canvas.drawPath(mSegmentPaths[i], mForegroundPaint);
         }
+        canvas.drawPath(mOutlinePath, mOutlinePaint);
 
         if (getIcon() != null) {
             getIcon().draw(canvas);
@@ -79,6 +83,7 @@ public class ChartDrawable extends ComplicationDrawable {
         float height = width;
 
         mPieChartBounds.set(getWidth() / 2f - width / 2f, getHeight() / 2f - height / 2f, getWidth() / 2f + width / 2f, getHeight() / 2f + height / 2f);
+        updateSegmentPaths();
 
         if (getIcon() != null) {
             int iconSize = (int) (width / 4);
@@ -86,6 +91,35 @@ public class ChartDrawable extends ComplicationDrawable {
         }
     }
 
+    /** Precomputes the wedge for each element so that drawing doesn't need to do any math. */
+    private void updateSegmentPaths() {
+        mOutlinePath.rewind();
+        if (mWeightSum <= 0f) {
+            for (Path path : mSegmentPaths) {
+                path.rewind();
+            }
+            return;
+        }
+
+        float degreesPerWeight = 360f / mWeightSum;
+        float startingAngle = -90;
+        for (int i = 0; i < mSegmentPaths.length; i++) {
+            float degrees = degreesPerWeight * mWeights[i];
+            Path path = mSegmentPaths[i];
+            path.rewind();
+            if (degrees >= 360f) {
+                // A single element takes up the whole chart. An arc can't sweep a full circle, so use an oval.
+                path.addOval(mPieChartBounds, Path.Direction.CW);
+            } else if (degrees > 0f) {
+                path.moveTo(mPieChartBounds.centerX(), mPieChartBounds.centerY());
+                path.arcTo(mPieChartBounds, startingAngle, degrees);
+                path.close();
+            }
+            mOutlinePath.addPath(path);
+            startingAngle += degrees;
+        }
+    }
+
     protected void setStyle(Style style) {
         super.setStyle(Style.EMPTY); // We'll draw our own background
         switch (style) {
@@ -155,6 +189,13 @@ public class ChartDrawable extends ComplicationDrawable {
         }
 
         public ChartDrawable build() {
+            float[] weights = new float[mWeights.size()];
+            int[] colors = new int[mColors.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = mWeights.get(i);
+                colors[i] = mColors.get(i);
+            }
+
             ChartDrawable drawable = new ChartDrawable(
                     mContext,
                     mIcon,
@@ -162,8 +203,8 @@ public class ChartDrawable extends ComplicationDrawable {
                     mTitle,
                     mBackgroundColor,
                     mWeightSum,
-                    mWeights,
-                    mColors);
+                    weights,
+                    colors);
             drawable.setStyle(mStyle);
             return drawable;
         }
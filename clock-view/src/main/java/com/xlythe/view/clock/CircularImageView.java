@@ -7,7 +7,9 @@ import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
+import android.graphics.Outline;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
@@ -18,6 +20,8 @@ import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewOutlineProvider;
 import androidx.appcompat.widget.AppCompatImageView;
 
 import androidx.annotation.Nullable;
@@ -29,6 +33,7 @@ import androidx.annotation.Nullable;
 public class CircularImageView extends AppCompatImageView implements Animator.OnInvalidateListener {
     private static final String STATE_SUPER = "super";
     private static final String STATE_ENABLED = "circular_enabled";
+    private static final String STATE_RENDER_MODE = "render_mode";
 
     // For logging purposes
     private static final String TAG = CircularImageView.class.getSimpleName();
@@ -42,6 +47,35 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
     private Paint mPaint;
 
     private boolean mEnableCircular = true;
+    private RenderMode mRenderMode = RenderMode.BITMAP_SHADER;
+
+    // Used by RenderMode.CLIP when drawing into a software canvas, which ignores outlines.
+    private final Path mClipPath = new Path();
+
+    public enum RenderMode {
+        /**
+         * Rasterizes the drawable into a bitmap and draws it as a circle with a BitmapShader.
+         * The drawable is always center cropped.
+         */
+        BITMAP_SHADER,
+        /**
+         * Draws the drawable directly, clipped to a circle. Hardware accelerated canvases clip
+         * with the view's outline, while software canvases clip with a cached path. The drawable is
+         * positioned by the ImageView's ScaleType (use CENTER_CROP to match BITMAP_SHADER).
+         * Animated drawables cost one draw per frame, with no bitmap copy or shader rebuild.
+         */
+        CLIP
+    }
+
+    private static final ViewOutlineProvider CIRCULAR_OUTLINE = new ViewOutlineProvider() {
+        @Override
+        public void getOutline(View view, Outline outline) {
+            int size = Math.min(view.getWidth(), view.getHeight());
+            int left = (view.getWidth() - size) / 2;
+            int top = (view.getHeight() - size) / 2;
+            outline.setOval(left, top, left + size, top + size);
+        }
+    };
 
     public CircularImageView(Context context) {
         super(context);
@@ -75,6 +109,10 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
 
     @Override
     public void onInvalidate() {
+        if (mRenderMode == RenderMode.CLIP) {
+            invalidate();
+            return;
+        }
         invalidateImage();
     }
 
@@ -83,6 +121,7 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
         Bundle bundle = new Bundle();
         bundle.putParcelable(STATE_SUPER, super.onSaveInstanceState());
         bundle.putBoolean(STATE_ENABLED, mEnableCircular);
+        bundle.putInt(STATE_RENDER_MODE, mRenderMode.ordinal());
         return bundle;
     }
 
@@ -90,9 +129,20 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
     protected void onRestoreInstanceState(Parcelable state) {
         Bundle bundle = (Bundle) state;
         mEnableCircular = bundle.getBoolean(STATE_ENABLED);
+        setRenderMode(RenderMode.values()[bundle.getInt(STATE_RENDER_MODE, mRenderMode.ordinal())]);
         super.onRestoreInstanceState(bundle.getParcelable(STATE_SUPER));
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mClipPath.reset();
+        mClipPath.addCircle(w / 2f, h / 2f, Math.min(w, h) / 2f, Path.Direction.CW);
+        if (getClipToOutline()) {
+            invalidateOutline();
+        }
+    }
+
     @Override
     public void onDraw(Canvas canvas) {
         if (!mEnableCircular) {
@@ -100,6 +150,20 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
             return;
         }
 
+        if (mRenderMode == RenderMode.CLIP) {
+            if (canvas.isHardwareAccelerated() && getClipToOutline()) {
+                // The outline already clips us to a circle.
+                super.onDraw(canvas);
+                return;
+            }
+
+            canvas.save();
+            canvas.clipPath(mClipPath);
+            super.onDraw(canvas);
+            canvas.restore();
+            return;
+        }
+
         // Don't draw anything without an image
         if (mImage == null) {
             mImage = drawableToBitmap(getDrawable());
@@ -173,10 +237,16 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
     }
 
     private void invalidateImage() {
+        if (mRenderMode == RenderMode.CLIP) {
+            return;
+        }
         invalidateImage(drawableToBitmap(getDrawable()));
     }
 
     private void invalidateImage(Bitmap bitmap) {
+        if (mRenderMode == RenderMode.CLIP) {
+            return;
+        }
         mImage = bitmap;
         if (mCanvasSize > 0) {
             updateBitmapShader();
@@ -248,5 +318,38 @@ public class CircularImageView extends AppCompatImageView implements Animator.On
 
     public void setCircularEnabled(boolean enabled) {
         mEnableCircular = enabled;
+        updateOutline();
+    }
+
+    public RenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    public void setRenderMode(RenderMode renderMode) {
+        if (mRenderMode == renderMode) {
+            return;
+        }
+
+        mRenderMode = renderMode;
+        if (renderMode == RenderMode.CLIP) {
+            // Drop the rasterized copy. We'll draw the drawable directly from now on.
+            mImage = null;
+            mShader = null;
+            mPaint.setShader(null);
+        } else {
+            invalidateImage();
+        }
+        updateOutline();
+        invalidate();
+    }
+
+    private void updateOutline() {
+        boolean clipToOutline = mEnableCircular && mRenderMode == RenderMode.CLIP;
+        if (clipToOutline == getClipToOutline()) {
+            return;
+        }
+
+        setOutlineProvider(clipToOutline ? CIRCULAR_OUTLINE : ViewOutlineProvider.BACKGROUND);
+        setClipToOutline(clipToOutline);
     }
 }
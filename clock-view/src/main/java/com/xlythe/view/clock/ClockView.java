@@ -9,13 +9,17 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcelable;
+import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -51,6 +55,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 
 /**
  * An adjustable clock view
@@ -74,6 +79,7 @@ public class ClockView extends FrameLayout {
     private static final String EXTRA_BURN_IN_PROTECTION = "burn_in_protection";
     private static final String EXTRA_TIME_MILLIS = "time_millis";
     private static final String EXTRA_DATE_TIME = "date_time";
+    private static final String EXTRA_DIGITAL_TIME_MODE = "digital_time_mode";
 
     // Debug logic
     private long mInvalidationCycle = -1;
@@ -98,6 +104,22 @@ public class ClockView extends FrameLayout {
     private boolean mPartialRotationEnabled = false;
     private boolean mLowBitAmbient = false;
     private boolean mBurnInProtection = false;
+    private DigitalTimeMode mDigitalTimeMode = DigitalTimeMode.TEXT_VIEW;
+
+    // Draws the digital time when mDigitalTimeMode isn't TEXT_VIEW. The TextView is still
+    // measured and laid out, but only when the time format changes. It measures with tabular
+    // figures and its widest digit, so that it's never narrower than the drawable, and the
+    // time is exposed through its content description instead.
+    @Nullable
+    private FixedAdvanceTimeDrawable mTimeDrawable;
+    @Nullable
+    private String mTimeViewPattern;
+    private int mTimeViewDescriptionMinute = -1;
+    private final RectF mTimeDirtyBounds = new RectF();
+    private final Rect mTimeDirtyRect = new Rect();
+    private boolean mTimeViewTabular;
+    @Nullable
+    private String mTimeViewFontFeatureSettings;
 
     @Nullable
     private OnTimeTickListener mOnTimeTickListener;
@@ -129,6 +151,23 @@ public class ClockView extends FrameLayout {
 
     private final List<Observer<Map<Integer, ComplicationDataSourceInfo>>> mComplicationDataObservers = new ArrayList<>();
 
+    public enum DigitalTimeMode {
+        /** Sets the time on the @id/clock_time TextView every tick. */
+        TEXT_VIEW,
+        /**
+         * Draws the time with tabular figures on top of the @id/clock_time TextView, which is only
+         * laid out again when the time format changes. Ticks redraw the digits that changed. The
+         * TextView's text is only a placeholder it's measured with, so read the time from its
+         * content description (kept to the minute) instead.
+         */
+        FIXED_ADVANCE,
+        /**
+         * Like FIXED_ADVANCE, but digits are blitted out of a pre-rendered bitmap atlas instead of
+         * being drawn as text. Meant for faces that show milliseconds.
+         */
+        GLYPH_ATLAS
+    }
+
     public ClockView(Context context) {
         super(context);
         init(context, /*attrs=*/ null);
@@ -160,6 +199,7 @@ public class ClockView extends FrameLayout {
             mLowBitAmbient = a.getBoolean(R.styleable.ClockView_lowBitAmbient, mLowBitAmbient);
             mBurnInProtection = a.getBoolean(R.styleable.ClockView_hasBurnInProtection, mBurnInProtection);
             mAmbientModeEnabled = a.getBoolean(R.styleable.ClockView_ambientModeEnabled, mAmbientModeEnabled);
+            setDigitalTimeMode(DigitalTimeMode.values()[a.getInteger(R.styleable.ClockView_digitalTimeMode, mDigitalTimeMode.ordinal())]);
             a.recycle();
         }
         setClipChildren(false);
@@ -230,14 +270,82 @@ public class ClockView extends FrameLayout {
         postDelayed(this::invalidate, delayMilliseconds);
     }
 
+    @Override
+    protected boolean verifyDrawable(@NonNull Drawable who) {
+        return who == mTimeDrawable || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (child != mTimeView || mTimeDrawable == null) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
+
+        // The TextView holds the style and position of the time, but we draw the time ourselves.
+        // It's drawn the way the TextView would be, in its coordinates, with its transform and alpha.
+        TextView timeView = mTimeView;
+        int saveCount = canvas.save();
+        canvas.translate(timeView.getLeft(), timeView.getTop());
+        Matrix matrix = timeView.getMatrix();
+        if (!matrix.isIdentity()) {
+            canvas.concat(matrix);
+        }
+        float alpha = timeView.getAlpha();
+        if (alpha < 1f) {
+            canvas.saveLayerAlpha(0, 0, timeView.getWidth(), timeView.getHeight(), Math.round(alpha * 255));
+        }
+
+        Drawable background = timeView.getBackground();
+        if (background != null) {
+            background.setBounds(0, 0, timeView.getWidth(), timeView.getHeight());
+            background.draw(canvas);
+        }
+
+        mTimeDrawable.setTextPaint(timeView.getPaint());
+        mTimeDrawable.setColor(timeView.getCurrentTextColor());
+        if (mTimeDrawable instanceof GlyphAtlasTimeDrawable) {
+            ((GlyphAtlasTimeDrawable) mTimeDrawable).setAmbient(isAmbientModeEnabled() && isLowBitAmbient());
+        }
+        mTimeDrawable.setGravity(timeView.getGravity());
+        mTimeDrawable.setBaseline(timeView.getBaseline() - timeView.getPaddingTop());
+        mTimeDrawable.setBounds(
+                timeView.getPaddingLeft(),
+                timeView.getPaddingTop(),
+                timeView.getWidth() - timeView.getPaddingRight(),
+                timeView.getHeight() - timeView.getPaddingBottom());
+        mTimeDrawable.draw(canvas);
+        canvas.restoreToCount(saveCount);
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
     @Override
     public void invalidateDrawable(@NonNull Drawable drawable) {
-        if (!isManualInvalidationEnabled()) {
+        if (!isManualInvalidationEnabled() && drawable != mTimeDrawable) {
             super.invalidateDrawable(drawable);
             return;
         }
 
-        invalidate();
+        // Only the region the drawable changed is redrawn, eg. the digits that ticked.
+        invalidate(getDirtyBounds(drawable));
+        if (isManualInvalidationEnabled() && mOnInvalidateListener != null) {
+            mOnInvalidateListener.onInvalidate();
+        }
+    }
+
+    /** Returns the region the drawable changed, in our coordinates. */
+    private Rect getDirtyBounds(Drawable drawable) {
+        Rect dirtyBounds = drawable.getDirtyBounds();
+        if (drawable != mTimeDrawable || mTimeView == null) {
+            return dirtyBounds;
+        }
+
+        // The time drawable is drawn in the TextView's coordinates.
+        mTimeDirtyBounds.set(dirtyBounds);
+        mTimeView.getMatrix().mapRect(mTimeDirtyBounds);
+        mTimeDirtyBounds.offset(mTimeView.getLeft(), mTimeView.getTop());
+        mTimeDirtyBounds.roundOut(mTimeDirtyRect);
+        return mTimeDirtyRect;
     }
 
     @Override
@@ -618,6 +726,7 @@ public class ClockView extends FrameLayout {
     @Override
     protected void onFinishInflate() {
         mTimeView = findViewById(R.id.clock_time);
+        updateTimeViewFontFeatureSettings();
         mSeconds = findViewById(R.id.clock_seconds);
         mMinutes = findViewById(R.id.clock_minutes);
         mHours = findViewById(R.id.clock_hours);
@@ -776,6 +885,107 @@ public class ClockView extends FrameLayout {
         }
     }
 
+    public DigitalTimeMode getDigitalTimeMode() {
+        return mDigitalTimeMode;
+    }
+
+    /** Sets how the digital time is drawn. See {@link DigitalTimeMode}. */
+    public void setDigitalTimeMode(DigitalTimeMode mode) {
+        if (mDigitalTimeMode == mode) {
+            return;
+        }
+
+        mDigitalTimeMode = mode;
+        if (mTimeDrawable != null) {
+            mTimeDrawable.setCallback(null);
+        }
+        mTimeDrawable = createTimeDrawable(mode);
+        if (mTimeDrawable != null) {
+            mTimeDrawable.setCallback(this);
+        }
+        mTimeViewPattern = null;
+        mTimeViewDescriptionMinute = -1;
+        updateTimeViewFontFeatureSettings();
+        if (mTimeDrawable == null && mTimeView != null) {
+            mTimeView.setContentDescription(null);
+        }
+        onTimeTick();
+        invalidate();
+    }
+
+    /**
+     * Turns on tabular figures for the TextView while a drawable draws the time, so that it's
+     * measured the same way, and restores the original settings afterwards.
+     */
+    private void updateTimeViewFontFeatureSettings() {
+        if (mTimeView == null || mTimeViewTabular == (mTimeDrawable != null)) {
+            return;
+        }
+
+        mTimeViewTabular = mTimeDrawable != null;
+        if (mTimeViewTabular) {
+            mTimeViewFontFeatureSettings = mTimeView.getFontFeatureSettings();
+            mTimeView.setFontFeatureSettings(TextUtils.isEmpty(mTimeViewFontFeatureSettings)
+                    ? FixedAdvanceTimeDrawable.TABULAR_FIGURES
+                    : mTimeViewFontFeatureSettings + "," + FixedAdvanceTimeDrawable.TABULAR_FIGURES);
+        } else {
+            mTimeView.setFontFeatureSettings(mTimeViewFontFeatureSettings);
+            mTimeViewFontFeatureSettings = null;
+        }
+    }
+
+    /**
+     * Sets the time, to the minute, as the TextView's content description so that accessibility
+     * services can still read it. It's only set when the minute changes, as every change is
+     * reported to them.
+     */
+    private void updateTimeViewContentDescription(int hour, int minute) {
+        int minuteOfDay = hour * 60 + minute;
+        if (minuteOfDay == mTimeViewDescriptionMinute) {
+            return;
+        }
+
+        mTimeViewDescriptionMinute = minuteOfDay;
+        java.text.DateFormat format = DateFormat.getTimeFormat(getContext());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && mDateTime != null) {
+            format.setTimeZone(TimeZone.getTimeZone(mDateTime.getZone()));
+        }
+        mTimeView.setContentDescription(format.format(new Date(getTimeMillis())));
+    }
+
+    /**
+     * Returns the text the TextView is measured with while a drawable draws the time. Every digit
+     * is replaced by the widest one, as the drawable gives every digit that advance.
+     */
+    private static String getMeasuredText(TextView timeView, String formattedDate) {
+        char widestDigit = FixedAdvanceTimeDrawable.getWidestDigit(timeView.getPaint());
+        char[] chars = formattedDate.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (Character.isDigit(chars[i])) {
+                chars[i] = widestDigit;
+            }
+        }
+        return new String(chars);
+    }
+
+    @Nullable
+    private FixedAdvanceTimeDrawable createTimeDrawable(DigitalTimeMode mode) {
+        switch (mode) {
+            case FIXED_ADVANCE:
+                return new FixedAdvanceTimeDrawable();
+            case GLYPH_ATLAS:
+                return new GlyphAtlasTimeDrawable(getContext());
+            default:
+                return null;
+        }
+    }
+
+    /** Returns the drawable used to draw the digital time, or null when the TextView draws it. */
+    @Nullable
+    FixedAdvanceTimeDrawable getTimeDrawable() {
+        return mTimeDrawable;
+    }
+
     protected String getDateFormat() {
         StringBuilder format = new StringBuilder();
         format.append(DateFormat.is24HourFormat(getContext()) ? "HH" : "hh");
@@ -804,6 +1014,7 @@ public class ClockView extends FrameLayout {
         bundle.putBoolean(EXTRA_LOW_BIT_AMBIENT, mLowBitAmbient);
         bundle.putBoolean(EXTRA_BURN_IN_PROTECTION, mBurnInProtection);
         bundle.putLong(EXTRA_TIME_MILLIS, mTimeMillis);
+        bundle.putInt(EXTRA_DIGITAL_TIME_MODE, mDigitalTimeMode.ordinal());
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && mDateTime != null) {
             bundle.putString(EXTRA_DATE_TIME, mDateTime.toString());
         }
@@ -822,6 +1033,7 @@ public class ClockView extends FrameLayout {
         mLowBitAmbient = bundle.getBoolean(EXTRA_LOW_BIT_AMBIENT, mLowBitAmbient);
         mBurnInProtection = bundle.getBoolean(EXTRA_BURN_IN_PROTECTION, mBurnInProtection);
         mTimeMillis = bundle.getLong(EXTRA_TIME_MILLIS, mTimeMillis);
+        setDigitalTimeMode(DigitalTimeMode.values()[bundle.getInt(EXTRA_DIGITAL_TIME_MODE, mDigitalTimeMode.ordinal())]);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bundle.containsKey(EXTRA_DATE_TIME)) {
             mDateTime = ZonedDateTime.parse(bundle.getString(EXTRA_DATE_TIME));
         }
@@ -833,18 +1045,30 @@ public class ClockView extends FrameLayout {
         final int second = getSecond();
 
         if (mTimeView != null) {
+            final String pattern = getDateFormat();
             final String formattedDate;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && mDateTime != null) {
-                formattedDate = mDateTime.format(DateTimeFormatter.ofPattern(getDateFormat()));
+                formattedDate = mDateTime.format(DateTimeFormatter.ofPattern(pattern));
             } else {
-                String pattern = getDateFormat();
                 if (mCachedFormatter == null || !pattern.equals(mCachedFormatPattern)) {
                     mCachedFormatPattern = pattern;
                     mCachedFormatter = new SimpleDateFormat(pattern, Locale.getDefault());
                 }
                 formattedDate = mCachedFormatter.format(new Date(getTimeMillis()));
             }
-            mTimeView.setText(formattedDate);
+            if (mTimeDrawable == null) {
+                mTimeView.setText(formattedDate);
+            } else {
+                // The TextView only needs the text to measure itself, so it's only updated (and
+                // laid out) when the format changes. The drawable redraws the digits that changed.
+                if (!pattern.equals(mTimeViewPattern) || mTimeView.length() != formattedDate.length()) {
+                    mTimeViewPattern = pattern;
+                    mTimeViewDescriptionMinute = -1;
+                    mTimeView.setText(getMeasuredText(mTimeView, formattedDate));
+                }
+                updateTimeViewContentDescription(hour, minute);
+                mTimeDrawable.setText(formattedDate);
+            }
             mTimeView.setVisibility(isDigitalEnabled() ? View.VISIBLE : View.GONE);
         }
 
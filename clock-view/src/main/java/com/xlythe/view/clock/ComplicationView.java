@@ -5,7 +5,9 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.Icon;
 import android.graphics.drawable.RippleDrawable;
@@ -15,6 +17,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.ViewParent;
 
@@ -45,6 +48,7 @@ import androidx.wear.watchface.complications.data.SmallImage;
 import androidx.wear.watchface.complications.data.SmallImageComplicationData;
 import androidx.wear.watchface.complications.data.WeightedElementsComplicationData;
 
+import com.xlythe.view.clock.utils.BitmapPool;
 import com.xlythe.view.clock.utils.BitmapUtils;
 import com.xlythe.watchface.clock.PermissionActivity;
 
@@ -52,14 +56,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @OptIn(markerClass = ComplicationExperimental.class)
 public class ComplicationView extends AppCompatImageView {
-  // Doesn't seem to draw anything. Not sure why.
-  private static final boolean USE_ANDROIDX_DRAWABLE = false;
-
   private static final String BUNDLE_SUPER = "super";
   private static final String EXTRA_COMPLICATION_ID = "complication_id";
   private static final String EXTRA_COMPLICATION_DRAWABLE_STYLE = "complication_drawable_style";
@@ -76,6 +79,13 @@ public class ComplicationView extends AppCompatImageView {
   private ComplicationDrawable.Style mComplicationDrawableStyle = ComplicationDrawable.Style.DOT;
   private Style mComplicationStyle = Style.CHIP;
   private PlaceholderDrawable mPlaceholderDrawable;
+  private Renderer mRenderer = Renderer.DEFAULT;
+  private final Map<ComplicationType, Renderer> mRenderersByType = new EnumMap<>(ComplicationType.class);
+
+  // The downsampled photo shown for PhotoImageComplicationData. Borrowed from BitmapPool.
+  @Nullable private Bitmap mPhotoBitmap;
+  // True if mPhotoBitmap was handed back to BitmapPool when we were detached from the window.
+  private boolean mPhotoBitmapReleased;
 
   @Nullable private OnClickListener mOnClickListener;
 
@@ -94,6 +104,25 @@ public class ComplicationView extends AppCompatImageView {
     CHIP, BACKGROUND
   }
 
+  /**
+   * Turns ComplicationData into the drawable shown by a ComplicationView. Renderers can be chosen
+   * per view with {@link #setRenderer(Renderer)} or per complication type with
+   * {@link #setRenderer(ComplicationType, Renderer)}.
+   */
+  public interface Renderer {
+    /** Renders with this library's drawables (ComplicationDrawable, RangeDrawable, ChartDrawable). */
+    Renderer DEFAULT = ComplicationView::renderDefault;
+
+    /**
+     * Renders with androidx.wear.watchface.complications.rendering.ComplicationDrawable.
+     * Known issue: it doesn't seem to draw anything. Not sure why.
+     */
+    Renderer ANDROIDX = ComplicationView::renderAndroidx;
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    void render(ComplicationView view, ComplicationData complicationData);
+  }
+
   public ComplicationView(@NonNull Context context) {
     super(context);
     init(context, /*attrs=*/ null);
@@ -252,6 +281,51 @@ public class ComplicationView extends AppCompatImageView {
     }
   }
 
+  public Renderer getRenderer() {
+    return mRenderer;
+  }
+
+  /** Sets the renderer used for every complication type without a type specific renderer. */
+  public void setRenderer(Renderer renderer) {
+    mRenderer = renderer;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      rerender();
+    }
+  }
+
+  /** Returns the renderer that will be used for the given complication type. */
+  public Renderer getRenderer(ComplicationType type) {
+    Renderer renderer = mRenderersByType.get(type);
+    return renderer != null ? renderer : mRenderer;
+  }
+
+  /**
+   * Overrides the renderer used for a single complication type. Pass null to fall back to the
+   * view's renderer.
+   */
+  public void setRenderer(ComplicationType type, @Nullable Renderer renderer) {
+    if (renderer == null) {
+      mRenderersByType.remove(type);
+    } else {
+      mRenderersByType.put(type, renderer);
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      rerender();
+    }
+  }
+
+  @RequiresApi(api = Build.VERSION_CODES.O)
+  private void rerender() {
+    ComplicationData complicationData = mComplicationData;
+    if (complicationData == null) {
+      return;
+    }
+
+    // setComplicationData ignores data it has already seen, so clear it first.
+    mComplicationData = null;
+    setComplicationData(complicationData);
+  }
+
   public List<ComplicationType> getSupportedComplicationTypes() {
     List<ComplicationType> complicationTypes = new ArrayList<>();
     switch (mComplicationStyle) {
@@ -356,6 +430,66 @@ public class ComplicationView extends AppCompatImageView {
       complicationData = new NoDataComplicationData();
     }
 
+    // Once the new data is rendered, the previous photo (if any) is no longer drawn.
+    Bitmap previousPhotoBitmap = mPhotoBitmap;
+    mPhotoBitmap = null;
+
+    getRenderer(complicationData.getType()).render(this, complicationData);
+
+    if (previousPhotoBitmap != null && previousPhotoBitmap != mPhotoBitmap) {
+      BitmapPool.recycle(previousPhotoBitmap);
+    }
+
+    scheduleNextUpdate(complicationData);
+  }
+
+  @Override
+  protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+
+    // Photos are decoded and cropped at the size of the view, so only the photo is redone.
+    if (mPhotoBitmap != null
+            && w > 0 && h > 0
+            && (mPhotoBitmap.getWidth() != w || mPhotoBitmap.getHeight() != h)
+            && mComplicationData instanceof PhotoImageComplicationData) {
+      Bitmap previousPhotoBitmap = mPhotoBitmap;
+      setPhotoBitmap(asPhotoBitmap(((PhotoImageComplicationData) mComplicationData).getPhotoImage()));
+      if (previousPhotoBitmap != mPhotoBitmap) {
+        BitmapPool.recycle(previousPhotoBitmap);
+      }
+    }
+  }
+
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+
+    // The photo was handed back when we were detached, so it's decoded again.
+    if (mPhotoBitmapReleased && mComplicationData instanceof PhotoImageComplicationData) {
+      setPhotoBitmap(asPhotoBitmap(((PhotoImageComplicationData) mComplicationData).getPhotoImage()));
+    }
+    mPhotoBitmapReleased = false;
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+
+    // Hand the photo back to BitmapPool while we're not shown. Nothing may draw it afterwards, so
+    // the drawables holding it are dropped first.
+    if (mPhotoBitmap != null) {
+      Bitmap photoBitmap = mPhotoBitmap;
+      setPhotoBitmap(null);
+      if (mUseDynamicForeground) {
+        super.setForeground(mDefaultForegroundDrawable);
+      }
+      BitmapPool.recycle(photoBitmap);
+      mPhotoBitmapReleased = true;
+    }
+  }
+
+  @RequiresApi(api = Build.VERSION_CODES.O)
+  private void renderDefault(ComplicationData complicationData) {
     switch (complicationData.getType()) {
       case NO_DATA:
         setComplicationData((NoDataComplicationData) complicationData);
@@ -394,18 +528,45 @@ public class ComplicationView extends AppCompatImageView {
         setImageDrawable(isInWatchfaceEditor() ? mPlaceholderDrawable : null);
         break;
     }
+  }
 
-    if (USE_ANDROIDX_DRAWABLE) {
-      androidx.wear.watchface.complications.rendering.ComplicationDrawable androidxDrawable = new androidx.wear.watchface.complications.rendering.ComplicationDrawable(getContext());
-      androidxDrawable.setComplicationData(complicationData, true);
-      androidxDrawable.setLowBitAmbient(isAmbientModeEnabled());
-      androidxDrawable.setBurnInProtectionOn(hasBurnInProtection());
-      androidxDrawable.setInAmbientMode(isAmbientModeEnabled());
-      androidxDrawable.setCurrentTime(getInstant());
-      setImageDrawable(androidxDrawable);
-    }
+  @RequiresApi(api = Build.VERSION_CODES.O)
+  private void renderAndroidx(ComplicationData complicationData) {
+    // Doesn't seem to draw anything. Not sure why. DEFAULT stays the default until it does.
+    setContentDescription(asContentDescription(complicationData));
 
-    scheduleNextUpdate(complicationData);
+    androidx.wear.watchface.complications.rendering.ComplicationDrawable androidxDrawable = new androidx.wear.watchface.complications.rendering.ComplicationDrawable(getContext());
+    // Images are loaded synchronously. When loaded asynchronously, the first frames are drawn before the images are ready.
+    androidxDrawable.setComplicationData(complicationData, false);
+    androidxDrawable.setLowBitAmbient(isLowBitAmbient());
+    androidxDrawable.setBurnInProtectionOn(hasBurnInProtection());
+    androidxDrawable.setInAmbientMode(isAmbientModeEnabled());
+    androidxDrawable.setCurrentTime(getInstant());
+    setImageDrawable(androidxDrawable);
+  }
+
+  @Nullable
+  private CharSequence asContentDescription(ComplicationData complicationData) {
+    if (complicationData instanceof NoDataComplicationData) {
+      return asCharSequence(((NoDataComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof ShortTextComplicationData) {
+      return asCharSequence(((ShortTextComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof LongTextComplicationData) {
+      return asCharSequence(((LongTextComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof RangedValueComplicationData) {
+      return asCharSequence(((RangedValueComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof GoalProgressComplicationData) {
+      return asCharSequence(((GoalProgressComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof WeightedElementsComplicationData) {
+      return asCharSequence(((WeightedElementsComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof MonochromaticImageComplicationData) {
+      return asCharSequence(((MonochromaticImageComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof SmallImageComplicationData) {
+      return asCharSequence(((SmallImageComplicationData) complicationData).getContentDescription());
+    } else if (complicationData instanceof PhotoImageComplicationData) {
+      return asCharSequence(((PhotoImageComplicationData) complicationData).getContentDescription());
+    }
+    return null;
   }
 
   private void setComplicationData(NoDataComplicationData complicationData) {
@@ -547,8 +708,13 @@ public class ComplicationView extends AppCompatImageView {
   private void setComplicationData(PhotoImageComplicationData complicationData) {
     setContentDescription(asCharSequence(complicationData.getContentDescription()));
 
-    Drawable image = asDrawable(complicationData.getPhotoImage());
-    if (image != null) {
+    setPhotoBitmap(asPhotoBitmap(complicationData.getPhotoImage()));
+  }
+
+  private void setPhotoBitmap(@Nullable Bitmap photoBitmap) {
+    mPhotoBitmap = photoBitmap;
+    if (mPhotoBitmap != null) {
+      Drawable image = new BitmapDrawable(getResources(), mPhotoBitmap);
       setImageDrawable(new NonTintableDrawable(image));
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mUseDynamicForeground) {
         super.setForeground(new RippleDrawable(
@@ -561,6 +727,11 @@ public class ComplicationView extends AppCompatImageView {
     }
   }
 
+  @Nullable
+  Bitmap getPhotoBitmap() {
+    return mPhotoBitmap;
+  }
+
   private void setComplicationData(NoPermissionComplicationData complicationData) {
     setContentDescription(null);
     setImageDrawable(new ComplicationDrawable.Builder(getContext())
@@ -664,6 +835,31 @@ public class ComplicationView extends AppCompatImageView {
     return asDrawable(image.getImage());
   }
 
+  /**
+   * Decodes the photo sampled down to the size of this view (or the screen, if we haven't been
+   * laid out yet) and center cropped to our bounds, so we never draw a full resolution photo.
+   */
+  @Nullable
+  private Bitmap asPhotoBitmap(@Nullable Icon icon) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      return null;
+    }
+
+    if (icon == null) {
+      return null;
+    }
+
+    int width = getWidth();
+    int height = getHeight();
+    if (width <= 0 || height <= 0) {
+      DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+      width = displayMetrics.widthPixels;
+      height = displayMetrics.heightPixels;
+    }
+
+    return BitmapUtils.decodeCenterCrop(getContext(), icon, width, height);
+  }
+
   @Nullable
   private Drawable asDrawable(@Nullable Icon icon) {
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
@@ -0,0 +1,307 @@
+package com.xlythe.view.clock;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+import android.view.Gravity;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Draws a digital time using tabular figures, so that every digit has the same advance.
+ *
+ * The time is split into one cell per character. Cells are only laid out when the shape of the
+ * time (eg. "00:00:00"), the paint or the bounds change. When the time ticks, only the cells
+ * whose digit changed are invalidated, and cells outside of the canvas' clip are skipped.
+ */
+public class FixedAdvanceTimeDrawable extends Drawable {
+    static final String TABULAR_FIGURES = "tnum";
+    private static final String DIGITS = "0123456789";
+
+    private final TextPaint mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final Rect mClipBounds = new Rect();
+    private final Rect mDirtyBounds = new Rect();
+
+    private char[] mGlyphs = new char[0];
+    private float[] mCellLefts = new float[0];
+    private float[] mCellWidths = new float[0];
+    private float mCellTop;
+    private float mCellBottom;
+    private float mBaseline;
+
+    private int mGravity = Gravity.CENTER;
+    // The baseline, relative to the top of our bounds, or -1 to center the text vertically.
+    private int mBaselineOffset = -1;
+
+    private boolean mNeedsLayout = true;
+    private boolean mInvalidatingCells = false;
+    private int mLayoutCount = 0;
+
+    public FixedAdvanceTimeDrawable() {
+        mPaint.setFontFeatureSettings(TABULAR_FIGURES);
+    }
+
+    /**
+     * Copies the text attributes (size, typeface, letter spacing, etc) from the given paint.
+     * The cells are only laid out again if an attribute that affects their size changed.
+     */
+    public void setTextPaint(@NonNull TextPaint paint) {
+        if (mPaint.getTextSize() != paint.getTextSize()
+                || mPaint.getTextScaleX() != paint.getTextScaleX()
+                || mPaint.getLetterSpacing() != paint.getLetterSpacing()
+                || mPaint.getFlags() != paint.getFlags()
+                || !equals(mPaint.getTypeface(), paint.getTypeface())) {
+            mPaint.set(paint);
+            mPaint.setFontFeatureSettings(TABULAR_FIGURES);
+            requestLayout();
+        }
+    }
+
+    public void setColor(@ColorInt int color) {
+        if (mPaint.getColor() == color) {
+            return;
+        }
+        mPaint.setColor(color);
+        invalidateSelf();
+    }
+
+    /** Sets how the time is positioned within our bounds. Uses {@link Gravity} constants. */
+    public void setGravity(int gravity) {
+        if (mGravity == gravity) {
+            return;
+        }
+        mGravity = gravity;
+        requestLayout();
+    }
+
+    /** Sets the baseline relative to the top of our bounds, or -1 to center the time vertically. */
+    public void setBaseline(int baseline) {
+        if (mBaselineOffset == baseline) {
+            return;
+        }
+        mBaselineOffset = baseline;
+        requestLayout();
+    }
+
+    /**
+     * Updates the time. If the time has the same shape as before, only the cells whose character
+     * changed are invalidated.
+     */
+    public void setText(@NonNull CharSequence text) {
+        if (!hasSameShape(text)) {
+            mGlyphs = new char[text.length()];
+            for (int i = 0; i < mGlyphs.length; i++) {
+                mGlyphs[i] = text.charAt(i);
+            }
+            requestLayout();
+            return;
+        }
+
+        boolean dirty = false;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            char glyph = text.charAt(i);
+            if (mGlyphs[i] == glyph) {
+                continue;
+            }
+            mGlyphs[i] = glyph;
+
+            if (mNeedsLayout) {
+                // Everything will be drawn again anyway.
+                continue;
+            }
+
+            int left = (int) Math.floor(mCellLefts[i]);
+            int right = (int) Math.ceil(mCellLefts[i] + mCellWidths[i]);
+            if (!dirty) {
+                mDirtyBounds.set(left, (int) Math.floor(mCellTop), right, (int) Math.ceil(mCellBottom));
+                dirty = true;
+            } else {
+                mDirtyBounds.union(left, (int) Math.floor(mCellTop), right, (int) Math.ceil(mCellBottom));
+            }
+        }
+
+        if (dirty) {
+            mInvalidatingCells = true;
+            invalidateSelf();
+            mInvalidatingCells = false;
+        } else if (mNeedsLayout) {
+            invalidateSelf();
+        }
+    }
+
+    @NonNull
+    public CharSequence getText() {
+        return new String(mGlyphs);
+    }
+
+    /** Returns the number of times the cells were laid out. Useful to verify we aren't relaying out every tick. */
+    public int getLayoutCount() {
+        return mLayoutCount;
+    }
+
+    @NonNull
+    @Override
+    public Rect getDirtyBounds() {
+        // Drawable#invalidateSelf asks for this, so only the changed cells are redrawn.
+        return mInvalidatingCells ? mDirtyBounds : getBounds();
+    }
+
+    @Override
+    protected void onBoundsChange(@NonNull Rect bounds) {
+        super.onBoundsChange(bounds);
+        mNeedsLayout = true;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mNeedsLayout) {
+            layout();
+        }
+
+        boolean hasClip = canvas.getClipBounds(mClipBounds);
+        for (int i = 0; i < mGlyphs.length; i++) {
+            float left = mCellLefts[i];
+            float right = left + mCellWidths[i];
+            if (hasClip && (right < mClipBounds.left || left > mClipBounds.right
+                    || mCellBottom < mClipBounds.top || mCellTop > mClipBounds.bottom)) {
+                continue;
+            }
+            drawGlyph(canvas, mGlyphs, i, left, mBaseline, mPaint);
+        }
+    }
+
+    /** Draws a single cell. The cell starts at {@code left}, and the text sits on {@code baseline}. */
+    protected void drawGlyph(@NonNull Canvas canvas, @NonNull char[] glyphs, int index, float left, float baseline, @NonNull TextPaint paint) {
+        canvas.drawText(glyphs, index, 1, left, baseline, paint);
+    }
+
+    /** Called whenever the cells are laid out again. */
+    protected void onLayout(@NonNull TextPaint paint) {}
+
+    @NonNull
+    protected TextPaint getPaint() {
+        return mPaint;
+    }
+
+    private void requestLayout() {
+        mNeedsLayout = true;
+        invalidateSelf();
+    }
+
+    private void layout() {
+        mNeedsLayout = false;
+        mLayoutCount++;
+
+        float digitAdvance = getDigitAdvance(mPaint);
+
+        if (mCellLefts.length != mGlyphs.length) {
+            mCellLefts = new float[mGlyphs.length];
+            mCellWidths = new float[mGlyphs.length];
+        }
+
+        float width = 0;
+        for (int i = 0; i < mGlyphs.length; i++) {
+            mCellWidths[i] = Character.isDigit(mGlyphs[i]) ? digitAdvance : mPaint.measureText(mGlyphs, i, 1);
+            width += mCellWidths[i];
+        }
+
+        Rect bounds = getBounds();
+        float left;
+        switch (Gravity.getAbsoluteGravity(mGravity, getLayoutDirection()) & Gravity.HORIZONTAL_GRAVITY_MASK) {
+            case Gravity.CENTER_HORIZONTAL:
+                left = bounds.left + (bounds.width() - width) / 2f;
+                break;
+            case Gravity.RIGHT:
+                left = bounds.right - width;
+                break;
+            default:
+                left = bounds.left;
+                break;
+        }
+        for (int i = 0; i < mGlyphs.length; i++) {
+            mCellLefts[i] = left;
+            left += mCellWidths[i];
+        }
+
+        mPaint.getFontMetrics(mFontMetrics);
+        if (mBaselineOffset >= 0) {
+            mBaseline = bounds.top + mBaselineOffset;
+        } else {
+            mBaseline = bounds.exactCenterY() - (mFontMetrics.ascent + mFontMetrics.descent) / 2f;
+        }
+        mCellTop = mBaseline + mFontMetrics.ascent;
+        mCellBottom = mBaseline + mFontMetrics.descent;
+
+        onLayout(mPaint);
+    }
+
+    /**
+     * Returns the advance every digit is laid out with. With tabular figures, digits should all be
+     * equally wide. We take the widest just in case the typeface doesn't support them.
+     */
+    static float getDigitAdvance(@NonNull Paint paint) {
+        float digitAdvance = 0;
+        for (int i = 0; i < DIGITS.length(); i++) {
+            digitAdvance = Math.max(digitAdvance, paint.measureText(DIGITS, i, i + 1));
+        }
+        return digitAdvance;
+    }
+
+    /** Returns the digit with the widest advance in the given paint. */
+    static char getWidestDigit(@NonNull Paint paint) {
+        char widestDigit = DIGITS.charAt(0);
+        float digitAdvance = 0;
+        for (int i = 0; i < DIGITS.length(); i++) {
+            float advance = paint.measureText(DIGITS, i, i + 1);
+            if (advance > digitAdvance) {
+                digitAdvance = advance;
+                widestDigit = DIGITS.charAt(i);
+            }
+        }
+        return widestDigit;
+    }
+
+    private boolean hasSameShape(CharSequence text) {
+        if (text.length() != mGlyphs.length) {
+            return false;
+        }
+        for (int i = 0; i < mGlyphs.length; i++) {
+            char glyph = text.charAt(i);
+            if (Character.isDigit(glyph) != Character.isDigit(mGlyphs[i])) {
+                return false;
+            }
+            if (!Character.isDigit(glyph) && glyph != mGlyphs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(@Nullable Object a, @Nullable Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,254 @@
+package com.xlythe.view.clock;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bitmap holding the digits (and separators) of a digital time, rasterized once for a given
+ * (typeface, size, ambient) combination. Drawing a glyph is then a single bitmap blit.
+ *
+ * The glyphs are rasterized as an opaque alpha mask, which is drawn in the color of the paint it's
+ * blitted with. Color, alpha and color filters are applied by that paint, so they don't need an
+ * atlas of their own.
+ *
+ * Atlases are shared between every view with the same style. They're released when the system
+ * asks us to trim memory, and rebuilt (lazily) after a configuration change. Released atlases
+ * aren't recycled, as a drawable on another thread may still be drawing with one. They stop
+ * drawing, and their bitmap is left to the garbage collector.
+ */
+final class GlyphAtlas {
+    static final String GLYPHS = "0123456789:.";
+    private static final int MAX_CACHED_ATLASES = 4;
+
+    private static final Map<Key, GlyphAtlas> sCache = new LinkedHashMap<Key, GlyphAtlas>(MAX_CACHED_ATLASES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, GlyphAtlas> eldest) {
+            if (size() > MAX_CACHED_ATLASES) {
+                eldest.getValue().release();
+                return true;
+            }
+            return false;
+        }
+    };
+    private static boolean sRegisteredComponentCallbacks = false;
+
+    private final Key mKey;
+    // Where each cell starts in the bitmap, and how wide it is.
+    private final int[] mLefts = new int[GLYPHS.length()];
+    private final int[] mWidths = new int[GLYPHS.length()];
+    // Where each cell starts, relative to the pen position. Negative if the glyph overhangs to the left.
+    private final int[] mOffsets = new int[GLYPHS.length()];
+    private final float mAscent;
+    private final float mDescent;
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    @Nullable private volatile Bitmap mBitmap;
+
+    private GlyphAtlas(Key key, TextPaint source) {
+        mKey = key;
+
+        TextPaint paint = new TextPaint(source);
+        paint.setColor(Color.BLACK);
+        paint.setColorFilter(null);
+        // Ambient atlases are drawn on low-bit screens, which can't show anti-aliased edges.
+        paint.setAntiAlias(!key.mAmbient);
+
+        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+        mAscent = fontMetrics.ascent;
+        mDescent = fontMetrics.descent;
+
+        // Cells span the glyph's advance (the same one FixedAdvanceTimeDrawable lays digits out
+        // with) and its ink, so that glyphs that overhang their advance aren't cropped.
+        float digitAdvance = FixedAdvanceTimeDrawable.getDigitAdvance(paint);
+        Rect inkBounds = new Rect();
+        int width = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            float advance = Character.isDigit(GLYPHS.charAt(i)) ? digitAdvance : paint.measureText(GLYPHS, i, i + 1);
+            paint.getTextBounds(GLYPHS, i, i + 1, inkBounds);
+            int left = Math.min(0, inkBounds.left);
+            int right = Math.max((int) Math.ceil(advance), inkBounds.right);
+            mOffsets[i] = left;
+            mLefts[i] = width;
+            mWidths[i] = right - left;
+            width += mWidths[i];
+        }
+
+        int bitmapWidth = Math.max(1, width);
+        int bitmapHeight = Math.max(1, (int) Math.ceil(mDescent - mAscent));
+        Bitmap bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            canvas.drawText(GLYPHS, i, i + 1, mLefts[i] - mOffsets[i], -mAscent, paint);
+        }
+        mBitmap = bitmap;
+    }
+
+    /** Returns an atlas for the given style, rasterizing one if needed. */
+    @NonNull
+    static GlyphAtlas obtain(Context context, TextPaint paint, boolean ambient) {
+        Key key = new Key(paint, ambient);
+        synchronized (sCache) {
+            if (!sRegisteredComponentCallbacks) {
+                context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+                    @Override
+                    public void onTrimMemory(int level) {
+                        if (level >= TRIM_MEMORY_BACKGROUND) {
+                            clear();
+                        }
+                    }
+
+                    @Override
+                    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                        // Fonts, densities and themes may have changed. Rebuild lazily.
+                        clear();
+                    }
+
+                    @Override
+                    public void onLowMemory() {
+                        clear();
+                    }
+                });
+                sRegisteredComponentCallbacks = true;
+            }
+
+            GlyphAtlas atlas = sCache.get(key);
+            if (atlas == null) {
+                atlas = new GlyphAtlas(key, paint);
+                sCache.put(key, atlas);
+            }
+            return atlas;
+        }
+    }
+
+    /** Releases every atlas. Drawables holding one will rasterize a new atlas on their next draw. */
+    static void clear() {
+        List<GlyphAtlas> atlases;
+        synchronized (sCache) {
+            atlases = new ArrayList<>(sCache.values());
+            sCache.clear();
+        }
+        for (GlyphAtlas atlas : atlases) {
+            atlas.release();
+        }
+    }
+
+    /** Returns the number of atlases currently held by the cache. */
+    static int size() {
+        synchronized (sCache) {
+            return sCache.size();
+        }
+    }
+
+    /** Returns true if this atlas can draw with the given style. Checked every frame, so it doesn't allocate. */
+    boolean matches(TextPaint paint, boolean ambient) {
+        return mBitmap != null && mKey.matches(paint, ambient);
+    }
+
+    boolean isReleased() {
+        return mBitmap == null;
+    }
+
+    /**
+     * Draws the glyph with its pen position at {@code left} and sitting on {@code baseline}.
+     * Returns false if the glyph isn't part of the atlas.
+     */
+    boolean draw(Canvas canvas, char glyph, float left, float baseline) {
+        return draw(canvas, glyph, left, baseline, new Rect(), new RectF(), mBitmapPaint);
+    }
+
+    /**
+     * Same as {@link #draw(Canvas, char, float, float)}, using the caller's scratch rects and
+     * paint. The glyph is drawn in the paint's color, with its color filter. Atlases are shared
+     * across threads, so they can't hold scratch objects of their own.
+     */
+    boolean draw(Canvas canvas, char glyph, float left, float baseline, Rect src, RectF dst, Paint paint) {
+        int index = GLYPHS.indexOf(glyph);
+        // Read once. The atlas may be released by another thread while we draw.
+        Bitmap bitmap = mBitmap;
+        if (index < 0 || bitmap == null) {
+            return false;
+        }
+
+        src.set(mLefts[index], 0, mLefts[index] + mWidths[index], bitmap.getHeight());
+        dst.set(left + mOffsets[index], baseline + mAscent,
+                left + mOffsets[index] + mWidths[index], baseline + mAscent + bitmap.getHeight());
+        canvas.drawBitmap(bitmap, src, dst, paint);
+        return true;
+    }
+
+    private void release() {
+        // Not recycled. Drawables may still hold this atlas, and be drawing with it on another thread.
+        mBitmap = null;
+    }
+
+    private static final class Key {
+        @Nullable private final Typeface mTypeface;
+        private final float mTextSize;
+        private final float mTextScaleX;
+        // These change glyph advances, and so the width of the atlas cells.
+        private final float mLetterSpacing;
+        @Nullable private final String mFontFeatureSettings;
+        private final boolean mAmbient;
+
+        Key(TextPaint paint, boolean ambient) {
+            mTypeface = paint.getTypeface();
+            mTextSize = paint.getTextSize();
+            mTextScaleX = paint.getTextScaleX();
+            mLetterSpacing = paint.getLetterSpacing();
+            mFontFeatureSettings = paint.getFontFeatureSettings();
+            mAmbient = ambient;
+        }
+
+        /** Same as {@link #equals(Object)}, but compares against the paint in place. */
+        boolean matches(TextPaint paint, boolean ambient) {
+            return mTextSize == paint.getTextSize()
+                    && mTextScaleX == paint.getTextScaleX()
+                    && mLetterSpacing == paint.getLetterSpacing()
+                    && mAmbient == ambient
+                    && Objects.equals(mTypeface, paint.getTypeface())
+                    && Objects.equals(mFontFeatureSettings, paint.getFontFeatureSettings());
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mTextSize == key.mTextSize
+                    && mTextScaleX == key.mTextScaleX
+                    && mLetterSpacing == key.mLetterSpacing
+                    && mAmbient == key.mAmbient
+                    && Objects.equals(mTypeface, key.mTypeface)
+                    && Objects.equals(mFontFeatureSettings, key.mFontFeatureSettings);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mTypeface == null ? 0 : mTypeface.hashCode();
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + Float.floatToIntBits(mTextScaleX);
+            result = 31 * result + Float.floatToIntBits(mLetterSpacing);
+            result = 31 * result + (mFontFeatureSettings == null ? 0 : mFontFeatureSettings.hashCode());
+            result = 31 * result + (mAmbient ? 1 : 0);
+            return result;
+        }
+    }
+}
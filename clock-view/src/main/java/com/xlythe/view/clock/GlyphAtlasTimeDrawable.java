@@ -0,0 +1,70 @@
+package com.xlythe.view.clock;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.TextPaint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A {@link FixedAdvanceTimeDrawable} that blits each digit out of a pre-rendered
+ * {@link GlyphAtlas} instead of drawing it as text. This is meant for faces that tick every
+ * frame (eg. milliseconds), where even drawing a handful of glyphs is costly on a software canvas.
+ *
+ * Characters that aren't in the atlas fall back to being drawn as text.
+ */
+public class GlyphAtlasTimeDrawable extends FixedAdvanceTimeDrawable {
+    private final Context mContext;
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    // Blits the atlas in our color, alpha and color filter.
+    private final Paint mBlitPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    @Nullable private GlyphAtlas mAtlas;
+    private boolean mAmbient = false;
+
+    public GlyphAtlasTimeDrawable(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Ambient atlases are rasterized without anti-aliasing, for low-bit ambient screens.
+     */
+    public void setAmbient(boolean ambient) {
+        if (mAmbient == ambient) {
+            return;
+        }
+        mAmbient = ambient;
+        invalidateSelf();
+    }
+
+    public boolean isAmbient() {
+        return mAmbient;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        TextPaint paint = getPaint();
+        if (mAtlas == null || !mAtlas.matches(paint, mAmbient)) {
+            mAtlas = GlyphAtlas.obtain(mContext, paint, mAmbient);
+        }
+        mBlitPaint.setColor(paint.getColor());
+        mBlitPaint.setColorFilter(paint.getColorFilter());
+        super.draw(canvas);
+    }
+
+    @Override
+    protected void drawGlyph(@NonNull Canvas canvas, @NonNull char[] glyphs, int index, float left, float baseline, @NonNull TextPaint paint) {
+        if (mAtlas == null || !mAtlas.draw(canvas, glyphs[index], left, baseline, mSrc, mDst, mBlitPaint)) {
+            super.drawGlyph(canvas, glyphs, index, left, baseline, paint);
+        }
+    }
+
+    @Nullable
+    GlyphAtlas getAtlas() {
+        return mAtlas;
+    }
+}
@@ -3,16 +3,13 @@ package com.xlythe.view.clock;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.DashPathEffect;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PathEffect;
 import android.graphics.PathMeasure;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.SweepGradient;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 
@@ -21,28 +18,37 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
-import java.util.Arrays;
-import java.util.Random;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class RangeDrawable extends ComplicationDrawable {
     private final static int BACKGROUND_PROGRESS_ALPHA = 76;
+    private final static int MAX_CACHED_GEOMETRIES = 16;
+    private final static float SWEEP_GRADIENT_ROTATION = -90f;
+
+    // Ranged complications are usually laid out at the same few sizes, so the rounded rect path
+    // (and its measured length) is shared between all drawables of the same dimensions.
+    private static final Map<Geometry.Key, Geometry> sGeometryCache = new LinkedHashMap<Geometry.Key, Geometry>(MAX_CACHED_GEOMETRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Geometry.Key, Geometry> eldest) {
+            return size() > MAX_CACHED_GEOMETRIES;
+        }
+    };
 
     private final float mMin;
     private final float mMax;
-    private final float mValue;
+    private float mValue;
     @Nullable private final int[] mColors;
     private final boolean mSmoothColors;
 
     private final Paint mBackgroundProgressPaint = new Paint();
     private final Paint mForegroundProgressPaint = new Paint();
-    private Path mRoundedRectPath;
-    private Paint[] mMultiColoredForegroundPaints = new Paint[0];
+    @Nullable private Geometry mGeometry;
+    private final Paint[] mMultiColoredForegroundPaints;
+    private int mMultiColoredStepsToDraw;
 
-    // To work around a bug in SweepGradient. See #createSweepGradient for details.
-    private static final Set<Integer> sReservedSweepGradientColors = ConcurrentHashMap.newKeySet();
-    private int mSweepGradientHash;
+    // Shared with every other RangeDrawable using the same gradient. See SweepGradientCache for details.
+    @Nullable private SweepGradientCache.Entry mSweepGradient;
 
     RangeDrawable(
             Context context,
@@ -72,25 +78,41 @@ public class RangeDrawable extends ComplicationDrawable {
         mForegroundProgressPaint.setStyle(Paint.Style.STROKE);
         mForegroundProgressPaint.setStrokeWidth(getLineStrokeWidth());
         mForegroundProgressPaint.setAntiAlias(true);
+
+        // In stepped mode, each color gets its own paint. They're created once and reused across bounds and value changes.
+        if (mColors != null && !mSmoothColors) {
+            mMultiColoredForegroundPaints = new Paint[mColors.length];
+            for (int i = 0; i < mColors.length; i++) {
+                mMultiColoredForegroundPaints[i] = new Paint(mForegroundProgressPaint);
+                mMultiColoredForegroundPaints[i].setColor(mColors[i]);
+            }
+        } else {
+            mMultiColoredForegroundPaints = new Paint[0];
+        }
     }
 
     @Override
     public void draw(@NonNull Canvas canvas) {
         super.draw(canvas);
 
+        if (mGeometry == null) {
+            return;
+        }
+
         canvas.save();
         canvas.translate(mForegroundProgressPaint.getStrokeWidth(), mForegroundProgressPaint.getStrokeWidth());
 
         // Draw the background
-        canvas.drawPath(mRoundedRectPath, mBackgroundProgressPaint);
+        canvas.drawPath(mGeometry.path, mBackgroundProgressPaint);
 
         // Draw the foreground
         if (mMultiColoredForegroundPaints.length > 0) {
-            for (Paint paint : mMultiColoredForegroundPaints) {
-                canvas.drawPath(mRoundedRectPath, paint);
+            // Draw the largest percentage first, so that the smaller steps are drawn on top of it.
+            for (int i = mMultiColoredStepsToDraw - 1; i >= 0; i--) {
+                canvas.drawPath(mGeometry.path, mMultiColoredForegroundPaints[i]);
             }
         } else {
-            canvas.drawPath(mRoundedRectPath, mForegroundProgressPaint);
+            canvas.drawPath(mGeometry.path, mForegroundProgressPaint);
         }
 
         canvas.restore();
@@ -118,126 +140,93 @@ public class RangeDrawable extends ComplicationDrawable {
         // width/height by the stroke on both sides, and then we'll shift the canvas when we later draw.
         float width = getWidth() - 2 * mForegroundProgressPaint.getStrokeWidth();
         float height = getHeight() - 2 * mForegroundProgressPaint.getStrokeWidth();
-        float radius = height / 2f;
-
-        // Construct a rounded rect. We do this manually (with lines and arcs) because we want to
-        // control where the starting position is (center-top, or -90d).
-        mRoundedRectPath = new Path();
-        mRoundedRectPath.setLastPoint(width / 2f, 0);
-        mRoundedRectPath.lineTo(width - radius, 0);
-        mRoundedRectPath.arcTo(new RectF(width - 2 * radius, 0, width, height), 270, 180);
-        mRoundedRectPath.lineTo(radius, height);
-        mRoundedRectPath.arcTo(new RectF(0, 0, 2 * radius, height), 90, 180);
-        mRoundedRectPath.close();
-
-        // Measure the length of the path and then create a dash and a space that are each equal in length to the path.
-        // We'll then rotate this effect as the progress increments.
-        float length = new PathMeasure(mRoundedRectPath, false).getLength();
-        PathEffect effect = new DashPathEffect(new float[] { length, length }, length - length * getProgress());
+        mGeometry = obtainGeometry(width, height, mForegroundProgressPaint.getStrokeWidth());
+
+        // If the user specified a smooth set of colors, we'll apply those here.
+        if (mColors != null && mSmoothColors) {
+            // Find a gradient that sweeps through the colors. The gradient starts at 0d, but our
+            // progress starts at -90d so we'll rotate backwards to match it.
+            float cx = width / 2f;
+            float cy = height / 2f;
+            if (mSweepGradient == null || !mSweepGradient.matches(mColors, cx, cy, SWEEP_GRADIENT_ROTATION)) {
+                SweepGradientCache.Entry sweepGradient = SweepGradientCache.acquire(mColors, cx, cy, SWEEP_GRADIENT_ROTATION);
+                SweepGradientCache.release(mSweepGradient);
+                mSweepGradient = sweepGradient;
+            }
 
-        // PathMeasure doesn't perfectly measure the length of the radius, sometimes leaving the path
-        // unclosed as you approach 100%. To avoid that, we don't set the effect at 100% to ensure the path is closed.
-        if (getProgress() < 1f) {
-            mForegroundProgressPaint.setPathEffect(effect);
+            mForegroundProgressPaint.setShader(mSweepGradient.getGradient());
         }
 
-        // If the user specified what colors to use, we'll apply those here.
-        if (mColors != null) {
-            if (mSmoothColors) {
-                // Create a gradient that sweeps through the colors
-                SweepGradient gradient = createSweepGradient(width / 2f, height / 2f, mColors);
-
-                // The gradient starts at 0d, but our progress starts at -90d so we'll rotate backwards to match it.
-                Matrix gradientMatrix = new Matrix();
-                gradientMatrix.preRotate(-90, width / 2f, height / 2f);
-                gradient.setLocalMatrix(gradientMatrix);
+        updateProgress();
+    }
 
-                mForegroundProgressPaint.setShader(gradient);
-            } else {
-                // To mimic the illusion of shifting colors in fixed steps, we'll draw multiple times.
-                // The first pass will be the furthest color, followed by drawing on top of that with a smaller
-                // percentage, and again and again. To do that, we first break the percentages down into steps.
-                float stepSize = 1f / mColors.length;
-
-                // Next, we'll calculate the step that we're on now.
-                int stepsToDraw = (int) Math.ceil(getProgress() / stepSize);
-                mMultiColoredForegroundPaints = new Paint[stepsToDraw];
-
-                // Now we'll loop over those steps and create a paint for each one.
-                for (int i = 0; i < mMultiColoredForegroundPaints.length; i++) {
-                    float progress = Math.min((i + 1) * stepSize, getProgress());
-                    mMultiColoredForegroundPaints[i] = new Paint(mForegroundProgressPaint);
-                    mMultiColoredForegroundPaints[i].setColor(mColors[i]);
-                    if (progress < 1f) {
-                        mMultiColoredForegroundPaints[i].setPathEffect(new DashPathEffect(new float[]{length, length}, length - length * progress));
-                    }
-                }
+    /**
+     * Updates the value shown by this drawable. Only the dash phase of the existing paints is
+     * updated, so this is much cheaper than building a new drawable.
+     */
+    public void setValue(float value) {
+        if (mValue == value) {
+            return;
+        }
 
-                // And finally we'll flip the array so that they're drawn in order of the largest
-                // percentage first.
-                reverse(mMultiColoredForegroundPaints);
-            }
+        mValue = value;
+        if (mGeometry != null) {
+            updateProgress();
         }
+        invalidateSelf();
     }
 
-    // Note: This is to work around a bug seen on the emulator. Not sure if it repros in production too.
-    // SweepGradient can corrupt itself if multiple instances of it are used at the same time, using the same params.
-    // To work around that, we'll keep track of what colors we're using and subtly modify them to create unique params.
-    private SweepGradient createSweepGradient(float cx, float cy, @ColorInt int[] colors) {
-        int[] clonedColors = colors.clone();
-        sReservedSweepGradientColors.remove(mSweepGradientHash);
-
-        // We don't need to perfectly compare the colors, since the modification is subtle if we're wrong.
-        // So we'll just hash our colors and compare with the other hashes.
-        int hash = Arrays.hashCode(clonedColors);
-        while (sReservedSweepGradientColors.contains(hash)) {
-            randomizeColors(clonedColors);
-            hash = Arrays.hashCode(clonedColors);
+    /** Rotates the dash effect on the foreground paints to match the current progress. */
+    private void updateProgress() {
+        if (mGeometry == null) {
+            return;
+        }
+
+        float progress = getProgress();
+
+        // PathMeasure doesn't perfectly measure the length of the radius, sometimes leaving the path
+        // unclosed as you approach 100%. To avoid that, we don't set the effect at 100% to ensure the path is closed.
+        mForegroundProgressPaint.setPathEffect(progress < 1f ? mGeometry.createDashPathEffect(progress) : null);
+
+        if (mMultiColoredForegroundPaints.length > 0) {
+            // To mimic the illusion of shifting colors in fixed steps, we'll draw multiple times.
+            // The first pass will be the furthest color, followed by drawing on top of that with a smaller
+            // percentage, and again and again. To do that, we first break the percentages down into steps.
+            float stepSize = 1f / mMultiColoredForegroundPaints.length;
+
+            // Next, we'll calculate the step that we're on now.
+            mMultiColoredStepsToDraw = Math.min((int) Math.ceil(progress / stepSize), mMultiColoredForegroundPaints.length);
+
+            // Now we'll loop over those steps and update the dash on each one.
+            for (int i = 0; i < mMultiColoredStepsToDraw; i++) {
+                float stepProgress = Math.min((i + 1) * stepSize, progress);
+                mMultiColoredForegroundPaints[i].setPathEffect(stepProgress < 1f ? mGeometry.createDashPathEffect(stepProgress) : null);
+            }
         }
-        sReservedSweepGradientColors.add(hash);
-        mSweepGradientHash = hash;
-        return new SweepGradient(cx, cy, clonedColors, null);
     }
 
-    private static void randomizeColors(int[] colors) {
-        Random random = new Random();
-        for (int i = 0; i < colors.length; i++) {
-            int color = colors[i];
-            int alpha = Color.alpha(color);
-            int red = Color.red(color);
-            int green = Color.green(color);
-            int blue = Color.blue(color);
-
-            // Create an offset of -1 to 1
-            red += random.nextInt(3) - 1;
-            green += random.nextInt(3) - 1;
-            blue += random.nextInt(3) - 1;
-
-            red = clamp(red, 0, 255);
-            green = clamp(green, 0, 255);
-            blue = clamp(blue, 0, 255);
-
-            // Add the offset
-            colors[i] = Color.argb(alpha, red, green, blue);
+    /** Returns a (possibly shared) rounded rect path for the given dimensions. */
+    static Geometry obtainGeometry(float width, float height, float strokeWidth) {
+        Geometry.Key key = new Geometry.Key(width, height, strokeWidth);
+        synchronized (sGeometryCache) {
+            Geometry geometry = sGeometryCache.get(key);
+            if (geometry == null) {
+                geometry = new Geometry(width, height);
+                sGeometryCache.put(key, geometry);
+            }
+            return geometry;
         }
     }
 
-    private static int clamp(int val, int min, int max) {
-        return Math.max(Math.min(val, max), min);
+    @Nullable
+    Geometry getGeometry() {
+        return mGeometry;
     }
 
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
-        sReservedSweepGradientColors.remove(mSweepGradientHash);
-    }
-
-    private static <T> void reverse(T[] arr) {
-        for (int i = 0; i < arr.length / 2; i++) {
-            T temp = arr[i];
-            arr[i] = arr[arr.length - i - 1];
-            arr[arr.length - i - 1] = temp;
-        }
+        SweepGradientCache.release(mSweepGradient);
     }
 
     /** Returns the current progress from 0f to 1f */
@@ -249,6 +238,68 @@ public class RangeDrawable extends ComplicationDrawable {
         return mValue / (mMax - mMin);
     }
 
+    /**
+     * The rounded rect that progress is drawn along. Instances are immutable once built and are
+     * shared between every RangeDrawable with the same dimensions, so they must not be modified.
+     */
+    static final class Geometry {
+        final Path path;
+        final float length;
+        private final float[] mIntervals;
+
+        private Geometry(float width, float height) {
+            float radius = height / 2f;
+
+            // Construct a rounded rect. We do this manually (with lines and arcs) because we want to
+            // control where the starting position is (center-top, or -90d).
+            path = new Path();
+            path.setLastPoint(width / 2f, 0);
+            path.lineTo(width - radius, 0);
+            path.arcTo(new RectF(width - 2 * radius, 0, width, height), 270, 180);
+            path.lineTo(radius, height);
+            path.arcTo(new RectF(0, 0, 2 * radius, height), 90, 180);
+            path.close();
+
+            // Measure the length of the path. We'll later create a dash and a space that are each equal in length to the path,
+            // and rotate that effect as the progress increments.
+            length = new PathMeasure(path, false).getLength();
+            mIntervals = new float[] { length, length };
+        }
+
+        PathEffect createDashPathEffect(float progress) {
+            return new DashPathEffect(mIntervals, length - length * progress);
+        }
+
+        static final class Key {
+            private final float mWidth;
+            private final float mHeight;
+            private final float mStrokeWidth;
+
+            Key(float width, float height, float strokeWidth) {
+                mWidth = width;
+                mHeight = height;
+                mStrokeWidth = strokeWidth;
+            }
+
+            @Override
+            public boolean equals(@Nullable Object o) {
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                Key key = (Key) o;
+                return mWidth == key.mWidth && mHeight == key.mHeight && mStrokeWidth == key.mStrokeWidth;
+            }
+
+            @Override
+            public int hashCode() {
+                int result = Float.floatToIntBits(mWidth);
+                result = 31 * result + Float.floatToIntBits(mHeight);
+                result = 31 * result + Float.floatToIntBits(mStrokeWidth);
+                return result;
+            }
+        }
+    }
+
     public static class Builder {
         private final Context mContext;
         private Style mStyle = Style.FILL;
@@ -0,0 +1,137 @@
+package com.xlythe.view.clock;
+
+import android.graphics.Matrix;
+import android.graphics.SweepGradient;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A reference counted cache of SweepGradients.
+ *
+ * Note: This works around a bug seen on the emulator. SweepGradient can corrupt itself if multiple
+ * instances of it are used at the same time with the same params. Rather than creating one instance
+ * per drawable, every caller asking for the same (colors, center, rotation) shares a single shader.
+ * Shaders are never modified after creation, so sharing them between paints is safe.
+ */
+final class SweepGradientCache {
+    private static final Map<Key, Entry> sEntries = new HashMap<>();
+
+    private SweepGradientCache() {}
+
+    /**
+     * Returns a shared SweepGradient for the given params. Every call must be balanced by a call
+     * to {@link #release(Entry)} once the caller no longer draws with the shader.
+     */
+    @NonNull
+    static Entry acquire(@ColorInt int[] colors, float cx, float cy, float rotation) {
+        Key key = new Key(colors, cx, cy, rotation);
+        synchronized (sEntries) {
+            Entry entry = sEntries.get(key);
+            if (entry == null) {
+                SweepGradient gradient = new SweepGradient(cx, cy, key.mColors, null);
+                if (rotation != 0f) {
+                    Matrix matrix = new Matrix();
+                    matrix.preRotate(rotation, cx, cy);
+                    gradient.setLocalMatrix(matrix);
+                }
+                entry = new Entry(key, gradient);
+                sEntries.put(key, entry);
+            }
+            entry.mReferenceCount++;
+            return entry;
+        }
+    }
+
+    /** Releases a shader previously returned by {@link #acquire}. */
+    static void release(@Nullable Entry entry) {
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (sEntries) {
+            if (entry.mReferenceCount <= 0) {
+                return;
+            }
+
+            entry.mReferenceCount--;
+            if (entry.mReferenceCount == 0) {
+                sEntries.remove(entry.mKey);
+            }
+        }
+    }
+
+    /** Returns the number of distinct shaders currently held by the cache. */
+    static int size() {
+        synchronized (sEntries) {
+            return sEntries.size();
+        }
+    }
+
+    static final class Entry {
+        private final Key mKey;
+        private final SweepGradient mGradient;
+        private int mReferenceCount;
+
+        private Entry(Key key, SweepGradient gradient) {
+            mKey = key;
+            mGradient = gradient;
+        }
+
+        @NonNull
+        SweepGradient getGradient() {
+            return mGradient;
+        }
+
+        boolean matches(@ColorInt int[] colors, float cx, float cy, float rotation) {
+            return mKey.matches(colors, cx, cy, rotation);
+        }
+
+        int getReferenceCount() {
+            synchronized (sEntries) {
+                return mReferenceCount;
+            }
+        }
+    }
+
+    private static final class Key {
+        private final int[] mColors;
+        private final float mCx;
+        private final float mCy;
+        private final float mRotation;
+
+        Key(@ColorInt int[] colors, float cx, float cy, float rotation) {
+            mColors = colors.clone();
+            mCx = cx;
+            mCy = cy;
+            mRotation = rotation;
+        }
+
+        boolean matches(@ColorInt int[] colors, float cx, float cy, float rotation) {
+            return mCx == cx && mCy == cy && mRotation == rotation && Arrays.equals(mColors, colors);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return key.matches(mColors, mCx, mCy, mRotation);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(mColors);
+            result = 31 * result + Float.floatToIntBits(mCx);
+            result = 31 * result + Float.floatToIntBits(mCy);
+            result = 31 * result + Float.floatToIntBits(mRotation);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.xlythe.view.clock.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A pool of mutable bitmaps, so that short lived bitmaps (eg. photos that are replaced whenever
+ * complication data changes) can reuse each other's pixel memory instead of allocating new memory.
+ *
+ * Bitmaps are matched by config and size bucket, where a bucket is the next power of two of the
+ * bitmap's byte count. An exact match is preferred, otherwise a larger bitmap from the same bucket
+ * is reconfigured to the requested size. Once the pool holds more than {@link #getMaxSizeInBytes()},
+ * the least recently recycled bitmaps are dropped. Call {@link #registerComponentCallbacks(Context)}
+ * so that the pool is released when the system is low on memory.
+ */
+public class BitmapPool {
+    private static final int DEFAULT_MAX_SIZE_IN_BYTES = 8 * 1024 * 1024;
+
+    // Ordered from least to most recently recycled.
+    private static final LinkedList<Bitmap> sBitmaps = new LinkedList<>();
+    private static int sSizeInBytes;
+    private static int sMaxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+    private static boolean sRegisteredComponentCallbacks = false;
+
+    private BitmapPool() {}
+
+    /**
+     * Returns a mutable, transparent bitmap of the given size. The bitmap is taken from the pool
+     * if possible, and should be handed back with {@link #recycle(Bitmap)} once it's unused.
+     */
+    @NonNull
+    public static Bitmap obtain(int width, int height, @NonNull Bitmap.Config config) {
+        int byteCount = width * height * getBytesPerPixel(config);
+        int bucket = getBucket(byteCount);
+        synchronized (sBitmaps) {
+            Bitmap bestMatch = null;
+            Iterator<Bitmap> iterator = sBitmaps.descendingIterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getConfig() != config) {
+                    continue;
+                }
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    bestMatch = bitmap;
+                    break;
+                }
+                if (bestMatch == null
+                        && bitmap.getAllocationByteCount() >= byteCount
+                        && getBucket(bitmap.getAllocationByteCount()) == bucket) {
+                    bestMatch = bitmap;
+                }
+            }
+
+            if (bestMatch != null) {
+                sBitmaps.remove(bestMatch);
+                sSizeInBytes -= bestMatch.getAllocationByteCount();
+                if (bestMatch.getWidth() != width || bestMatch.getHeight() != height) {
+                    bestMatch.reconfigure(width, height, config);
+                }
+                bestMatch.eraseColor(Color.TRANSPARENT);
+                return bestMatch;
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not draw with the bitmap afterwards.
+     * Immutable and recycled bitmaps are ignored.
+     */
+    public static void recycle(@Nullable Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        synchronized (sBitmaps) {
+            if (bitmap.getAllocationByteCount() > sMaxSizeInBytes || sBitmaps.contains(bitmap)) {
+                return;
+            }
+
+            sBitmaps.addLast(bitmap);
+            sSizeInBytes += bitmap.getAllocationByteCount();
+            trimToSize(sMaxSizeInBytes);
+        }
+    }
+
+    /**
+     * Releases the pool when the system asks us to trim memory. The pool is emptied once the app
+     * is in the background, and halved while the app is running but memory is low.
+     */
+    public static void trimMemory(int level) {
+        synchronized (sBitmaps) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                trimToSize(0);
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                trimToSize(sSizeInBytes / 2);
+            }
+        }
+    }
+
+    /** Calls {@link #trimMemory(int)} whenever the application is asked to trim memory. */
+    public static void registerComponentCallbacks(@NonNull Context context) {
+        synchronized (sBitmaps) {
+            if (sRegisteredComponentCallbacks) {
+                return;
+            }
+            sRegisteredComponentCallbacks = true;
+        }
+
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+
+            @Override
+            public void onLowMemory() {
+                clear();
+            }
+        });
+    }
+
+    /** Drops every bitmap held by the pool. */
+    public static void clear() {
+        synchronized (sBitmaps) {
+            trimToSize(0);
+        }
+    }
+
+    public static int getMaxSizeInBytes() {
+        synchronized (sBitmaps) {
+            return sMaxSizeInBytes;
+        }
+    }
+
+    public static void setMaxSizeInBytes(int maxSizeInBytes) {
+        synchronized (sBitmaps) {
+            sMaxSizeInBytes = maxSizeInBytes;
+            trimToSize(maxSizeInBytes);
+        }
+    }
+
+    /** Returns the number of bytes currently held by the pool. */
+    public static int getSizeInBytes() {
+        synchronized (sBitmaps) {
+            return sSizeInBytes;
+        }
+    }
+
+    /** Returns the number of bitmaps currently held by the pool. */
+    public static int size() {
+        synchronized (sBitmaps) {
+            return sBitmaps.size();
+        }
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    /** Returns the power of two that the byte count rounds up to. */
+    private static int getBucket(int byteCount) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, byteCount) - 1);
+    }
+
+    private static void trimToSize(int maxSizeInBytes) {
+        while (sSizeInBytes > maxSizeInBytes && !sBitmaps.isEmpty()) {
+            Bitmap bitmap = sBitmaps.removeFirst();
+            sSizeInBytes -= bitmap.getAllocationByteCount();
+        }
+    }
+}
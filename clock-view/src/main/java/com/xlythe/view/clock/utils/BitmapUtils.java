@@ -2,51 +2,102 @@ package com.xlythe.view.clock.utils;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PaintFlagsDrawFilter;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.DrawableContainer;
+import android.graphics.drawable.Icon;
 import android.graphics.drawable.LayerDrawable;
 import android.graphics.drawable.RippleDrawable;
 import android.graphics.drawable.StateListDrawable;
+import android.net.Uri;
 import android.os.Build;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.xlythe.view.clock.ClockView;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BitmapUtils {
+    // Reused by the *Into helpers, so compositing hands doesn't allocate every tick.
+    // Guarded by sScratchCanvas.
+    private static final Canvas sScratchCanvas = new Canvas();
+    private static final Matrix sScratchMatrix = new Matrix();
+    private static final Rect sScratchRect = new Rect();
+    private static final Paint sScratchPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
+
+    private static final AtomicInteger sRelayoutCount = new AtomicInteger();
+    private static volatile boolean sLayoutBoundaryEnabled = false;
+
+    /**
+     * Returns the resource rotated to the current hour. The decoded resource is cached by
+     * {@link ResourceBitmapCache}, but the returned bitmap is always a new one that the caller owns.
+     */
     public static Bitmap getHourAsBitmap(Context context, int res) {
+        return getHourAsBitmap(context, res, 0, false);
+    }
+
+    /**
+     * Returns the resource, rasterized at size x size, rotated to the current hour. Ambient
+     * bitmaps are rasterized without anti-aliasing.
+     */
+    public static Bitmap getHourAsBitmap(Context context, int res, int size, boolean ambient) {
         final int hour = Calendar.getInstance().get(Calendar.HOUR);
-        final Bitmap defaultDial = BitmapFactory.decodeResource(context.getResources(), res);
+        final Bitmap defaultDial = ResourceBitmapCache.get(context, res, size, size, Bitmap.Config.ARGB_8888, ambient);
         final float degrees = (hour) * 30;
-        return rotate(defaultDial, degrees);
+        return rotateCopy(defaultDial, degrees);
     }
 
     public static Bitmap getMinuteAsBitmap(Context context, int res) {
+        return getMinuteAsBitmap(context, res, 0, false);
+    }
+
+    public static Bitmap getMinuteAsBitmap(Context context, int res, int size, boolean ambient) {
         final int minute = Calendar.getInstance().get(Calendar.MINUTE);
-        final Bitmap defaultDial = BitmapFactory.decodeResource(context.getResources(), res);
+        final Bitmap defaultDial = ResourceBitmapCache.get(context, res, size, size, Bitmap.Config.ARGB_8888, ambient);
         final float degrees = (minute) * 6;
-        return rotate(defaultDial, degrees);
+        return rotateCopy(defaultDial, degrees);
     }
 
     public static Bitmap getSecondAsBitmap(Context context, int res) {
+        return getSecondAsBitmap(context, res, 0, false);
+    }
+
+    public static Bitmap getSecondAsBitmap(Context context, int res, int size, boolean ambient) {
         final int second = Calendar.getInstance().get(Calendar.SECOND);
-        final Bitmap defaultDial = BitmapFactory.decodeResource(context.getResources(), res);
+        final Bitmap defaultDial = ResourceBitmapCache.get(context, res, size, size, Bitmap.Config.ARGB_8888, ambient);
         final float degrees = (second) * 6;
-        return rotate(defaultDial, degrees);
+        return rotateCopy(defaultDial, degrees);
+    }
+
+    /**
+     * Like {@link #rotate(Bitmap, float)}, but returns a copy at 0 degrees too. Used for bitmaps
+     * shared by {@link ResourceBitmapCache}, which callers must not be able to modify or recycle.
+     */
+    private static Bitmap rotateCopy(Bitmap bitmap, float degrees) {
+        if (degrees == 0f) {
+            return bitmap.copy(bitmap.getConfig(), /*isMutable=*/ true);
+        }
+        return rotate(bitmap, degrees);
     }
 
     public static Bitmap rotate(Bitmap bitmap, float degrees) {
@@ -73,6 +124,119 @@ public class BitmapUtils {
         return croppedBmp;
     }
 
+    /**
+     * Rotates the bitmap around its center, drawing the result into {@code target}. Corners that
+     * rotate outside of the target are cropped off, like {@link #rotate(Bitmap, float)}.
+     *
+     * If {@code target} is null, a bitmap the size of the source is taken from {@link BitmapPool}.
+     * The target's previous content is cleared. Returns the target.
+     */
+    @NonNull
+    public static Bitmap rotate(Bitmap bitmap, float degrees, @Nullable Bitmap target) {
+        if (target == null) {
+            target = BitmapPool.obtain(bitmap.getWidth(), bitmap.getHeight(), getConfig(bitmap));
+        }
+
+        synchronized (sScratchCanvas) {
+            sScratchCanvas.setBitmap(target);
+            sScratchCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            drawRotated(sScratchCanvas, bitmap, degrees);
+            sScratchCanvas.setBitmap(null);
+        }
+        return target;
+    }
+
+    /**
+     * Draws the bitmaps on top of each other into {@code target}, scaling each to fill it. Null
+     * bitmaps are skipped. If {@code target} is null, a bitmap the size of the first bitmap is
+     * taken from {@link BitmapPool}. The target's previous content is cleared. Returns the target.
+     */
+    @NonNull
+    public static Bitmap flattenInto(@Nullable Bitmap target, Bitmap... bitmaps) {
+        if (target == null) {
+            target = BitmapPool.obtain(bitmaps[0].getWidth(), bitmaps[0].getHeight(), getConfig(bitmaps[0]));
+        }
+
+        synchronized (sScratchCanvas) {
+            sScratchCanvas.setBitmap(target);
+            sScratchCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            sScratchRect.set(0, 0, target.getWidth(), target.getHeight());
+            for (Bitmap bitmap : bitmaps) {
+                if (bitmap != null) {
+                    sScratchCanvas.drawBitmap(bitmap, null, sScratchRect, null);
+                }
+            }
+            sScratchCanvas.setBitmap(null);
+        }
+        return target;
+    }
+
+    /**
+     * Composes a clock face into {@code target} in a single pass: the dial, then the hour, minute
+     * and second hands rotated to the current time. Layers are centered, not scaled. For
+     * same sized layers, this matches flattening {@link #getHourAsBitmap}, {@link #getMinuteAsBitmap}
+     * and {@link #getSecondAsBitmap}, but without allocating a bitmap per hand. Any of the layers
+     * may be null.
+     *
+     * If {@code target} is null, a bitmap the size of the first non-null layer is taken from
+     * {@link BitmapPool}. Returns the target, or null if every layer was null.
+     */
+    @Nullable
+    public static Bitmap composeHands(@Nullable Bitmap target, @Nullable Bitmap dial, @Nullable Bitmap hour, @Nullable Bitmap minute, @Nullable Bitmap second) {
+        return composeHands(target, dial, hour, minute, second, Calendar.getInstance());
+    }
+
+    @Nullable
+    static Bitmap composeHands(@Nullable Bitmap target, @Nullable Bitmap dial, @Nullable Bitmap hour, @Nullable Bitmap minute, @Nullable Bitmap second, Calendar calendar) {
+        Bitmap[] layers = { dial, hour, minute, second };
+        float[] degrees = {
+                0f,
+                calendar.get(Calendar.HOUR) * 30,
+                calendar.get(Calendar.MINUTE) * 6,
+                calendar.get(Calendar.SECOND) * 6
+        };
+
+        if (target == null) {
+            for (Bitmap layer : layers) {
+                if (layer != null) {
+                    target = BitmapPool.obtain(layer.getWidth(), layer.getHeight(), getConfig(layer));
+                    break;
+                }
+            }
+            if (target == null) {
+                return null;
+            }
+        }
+
+        synchronized (sScratchCanvas) {
+            sScratchCanvas.setBitmap(target);
+            sScratchCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] != null) {
+                    drawRotated(sScratchCanvas, layers[i], degrees[i]);
+                }
+            }
+            sScratchCanvas.setBitmap(null);
+        }
+        return target;
+    }
+
+    /** Draws the bitmap centered on the canvas, rotated around its own center. */
+    private static void drawRotated(Canvas canvas, Bitmap bitmap, float degrees) {
+        sScratchMatrix.setRotate(degrees, bitmap.getWidth() / 2f, bitmap.getHeight() / 2f);
+        sScratchMatrix.postTranslate((canvas.getWidth() - bitmap.getWidth()) / 2f, (canvas.getHeight() - bitmap.getHeight()) / 2f);
+        canvas.drawBitmap(bitmap, sScratchMatrix, sScratchPaint);
+    }
+
+    private static Bitmap.Config getConfig(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        // Hardware bitmaps can't be drawn into, so fall back to a software config.
+        if (config == null || config == Bitmap.Config.HARDWARE) {
+            return Bitmap.Config.ARGB_8888;
+        }
+        return config;
+    }
+
     public static Bitmap flatten(Bitmap... bitmaps) {
         Bitmap container = Bitmap.createBitmap(bitmaps[0].getWidth(), bitmaps[0].getHeight(), bitmaps[0].getConfig());
         Canvas canvas = new Canvas(container);
@@ -103,6 +267,18 @@ public class BitmapUtils {
         return bitmap;
     }
 
+    /** Rasterizes the drawable at the given size. The drawable's bounds are left untouched. */
+    public static Bitmap asBitmap(Drawable drawable, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+
+        Rect bounds = drawable.copyBounds();
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawable.draw(canvas);
+        drawable.setBounds(bounds);
+        return bitmap;
+    }
+
     public static Drawable clone(Drawable drawable) {
         Drawable.ConstantState state = drawable.getConstantState();
         if (state == null) {
@@ -127,6 +303,189 @@ public class BitmapUtils {
         return Bitmap.createScaledBitmap(bitmap, width, height, false);
     }
 
+    /**
+     * Loads the icon as a bitmap that is no smaller than the requested size, while skipping as
+     * much of the source as possible. Uri and resource icons are sampled down while decoding, so
+     * the full resolution image is never held in memory. They're decoded into a bitmap from
+     * {@link BitmapPool}, which can be handed back once it's unused.
+     */
+    @Nullable
+    public static Bitmap decodeSampledBitmap(Context context, Icon icon, int reqWidth, int reqHeight) {
+        Bitmap bitmap = decodeSampledSource(context, icon, reqWidth, reqHeight);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        // Bitmap (or vector) icons are already in memory, so there's nothing to sample.
+        Drawable drawable = icon.loadDrawable(context);
+        if (drawable == null) {
+            return null;
+        }
+        return asBitmap(drawable);
+    }
+
+    /**
+     * Loads the icon sampled down like {@link #decodeSampledBitmap(Context, Icon, int, int)}, then
+     * scales and crops it to exactly width x height like {@link #centerCrop(Bitmap, int, int)}. The
+     * decoded photo goes back to {@link BitmapPool} once it's cropped, and the returned bitmap
+     * comes from the pool.
+     */
+    @Nullable
+    public static Bitmap decodeCenterCrop(Context context, Icon icon, int width, int height) {
+        Bitmap bitmap = decodeSampledSource(context, icon, width, height);
+        if (bitmap != null) {
+            Bitmap cropped = centerCrop(bitmap, width, height);
+            BitmapPool.recycle(bitmap);
+            return cropped;
+        }
+
+        // The icon's own bitmap may be shared, so it's only read from.
+        Drawable drawable = icon.loadDrawable(context);
+        if (drawable == null) {
+            return null;
+        }
+        return centerCrop(asBitmap(drawable), width, height);
+    }
+
+    /** Decodes uri and resource icons sampled down. Returns null for other icons. */
+    @Nullable
+    private static Bitmap decodeSampledSource(Context context, Icon icon, int reqWidth, int reqHeight) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return null;
+        }
+
+        switch (icon.getType()) {
+            case Icon.TYPE_URI:
+            case Icon.TYPE_URI_ADAPTIVE_BITMAP:
+                return decodeSampledBitmap(context, icon.getUri(), reqWidth, reqHeight);
+            case Icon.TYPE_RESOURCE:
+                return decodeSampledBitmap(context, icon.getResPackage(), icon.getResId(), reqWidth, reqHeight);
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeSampledBitmap(Context context, Uri uri, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.w(ClockView.TAG, "Failed to read the bounds of " + uri, e);
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        try {
+            return decodeIntoPooledBitmap(options, decodeOptions -> {
+                try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+                    return BitmapFactory.decodeStream(inputStream, null, decodeOptions);
+                }
+            });
+        } catch (IOException | SecurityException e) {
+            Log.w(ClockView.TAG, "Failed to decode " + uri, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeSampledBitmap(Context context, String packageName, int resId, int reqWidth, int reqHeight) {
+        Resources resources;
+        if (packageName == null || packageName.equals(context.getPackageName())) {
+            resources = context.getResources();
+        } else {
+            try {
+                resources = context.getPackageManager().getResourcesForApplication(packageName);
+            } catch (PackageManager.NameNotFoundException e) {
+                Log.w(ClockView.TAG, "Failed to find resources for " + packageName, e);
+                return null;
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not a bitmap (eg. a vector drawable)
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        try {
+            return decodeIntoPooledBitmap(options, decodeOptions -> BitmapFactory.decodeResource(resources, resId, decodeOptions));
+        } catch (IOException e) {
+            // Resources aren't read through a stream we open, so this isn't thrown.
+            return null;
+        }
+    }
+
+    /**
+     * Decodes into a bitmap from {@link BitmapPool} (via inBitmap), sized for the options' bounds
+     * and sample size. If the image can't be decoded into it, the bitmap goes back to the pool and
+     * the image is decoded into a new bitmap instead.
+     */
+    @Nullable
+    private static Bitmap decodeIntoPooledBitmap(BitmapFactory.Options options, Decoder decoder) throws IOException {
+        int width = Math.max(1, (options.outWidth + options.inSampleSize - 1) / options.inSampleSize);
+        int height = Math.max(1, (options.outHeight + options.inSampleSize - 1) / options.inSampleSize);
+        Bitmap inBitmap = BitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = inBitmap;
+        try {
+            Bitmap bitmap = decoder.decode(options);
+            if (bitmap != null) {
+                if (bitmap != inBitmap) {
+                    BitmapPool.recycle(inBitmap);
+                }
+                return bitmap;
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(ClockView.TAG, "Failed to decode into a pooled bitmap", e);
+        }
+
+        options.inBitmap = null;
+        BitmapPool.recycle(inBitmap);
+        return decoder.decode(options);
+    }
+
+    private interface Decoder {
+        @Nullable
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    /** Returns the largest power of 2 that keeps the decoded image at least as big as requested. */
+    static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        int halfWidth = options.outWidth / 2;
+        int halfHeight = options.outHeight / 2;
+        while (halfWidth / inSampleSize >= reqWidth && halfHeight / inSampleSize >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Scales and crops the source so that it exactly fills a width x height bitmap, keeping the
+     * center of the source. The returned bitmap comes from {@link BitmapPool}.
+     */
+    @NonNull
+    public static Bitmap centerCrop(Bitmap source, int width, int height) {
+        Bitmap target = BitmapPool.obtain(width, height, Bitmap.Config.ARGB_8888);
+
+        float scale = Math.max(width / (float) source.getWidth(), height / (float) source.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((width - source.getWidth() * scale) / 2f, (height - source.getHeight() * scale) / 2f);
+
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG));
+        return target;
+    }
+
     public static void measure(View view, Rect bounds) {
         // Update the view dimensions
         view.measure(View.MeasureSpec.makeMeasureSpec(bounds.width(), View.MeasureSpec.EXACTLY),
@@ -147,15 +506,46 @@ public class BitmapUtils {
         return container;
     }
 
+    /**
+     * Draws the view into {@code target}, which must be mutable and the size of the bounds. If the
+     * target is null (or the wrong size), a bitmap is taken from {@link BitmapPool} instead. A
+     * target of the wrong size is left untouched, and still belongs to the caller. Hand the
+     * returned bitmap back with {@link BitmapPool#recycle(Bitmap)} once it's no longer used, so
+     * that repeated draws of the same size reuse its pixel memory.
+     */
+    @NonNull
+    public static Bitmap draw(View view, Rect bounds, boolean forceResize, @Nullable Bitmap target) {
+        if (target == null || target.getWidth() != bounds.width() || target.getHeight() != bounds.height()) {
+            BitmapPool.registerComponentCallbacks(view.getContext());
+            target = BitmapPool.obtain(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+        } else {
+            target.eraseColor(Color.TRANSPARENT);
+        }
+
+        draw(view, new Canvas(target), bounds, forceResize);
+        return target;
+    }
+
     public static void draw(View view, Canvas canvas, Rect bounds) {
         draw(view, canvas, bounds, false);
     }
 
     public static void draw(View view, Canvas canvas, Rect bounds, boolean forceResize) {
+        draw(view, canvas, bounds, forceResize, sLayoutBoundaryEnabled);
+    }
+
+    /**
+     * Draws the view onto the canvas. If {@code layoutBoundary} is true, descendants that requested
+     * a layout but keep their size are laid out on their own. See {@link #setLayoutBoundaryEnabled}.
+     */
+    public static void draw(View view, Canvas canvas, Rect bounds, boolean forceResize, boolean layoutBoundary) {
         // Update the view dimensions
-        if (forceResize || view.getWidth() != bounds.width() || view.getHeight() != bounds.height()
-                || view.isLayoutRequested()) {
-            measure(view, bounds);
+        if (forceResize || view.getWidth() != bounds.width() || view.getHeight() != bounds.height()) {
+            relayout(view, bounds);
+        } else if (view.isLayoutRequested()) {
+            if (!layoutBoundary || !layoutChildrenLocally(view)) {
+                relayout(view, bounds);
+            }
         }
 
         // Prepare the view for drawing
@@ -165,6 +555,93 @@ public class BitmapUtils {
         view.draw(canvas);
     }
 
+    /**
+     * When enabled, {@link #draw(View, Canvas, Rect, boolean)} treats descendants whose size
+     * doesn't change as layout boundaries. A TextView whose text changed is measured and laid out
+     * on its own, instead of measuring and laying out the whole tree again. Disabled by default.
+     */
+    public static void setLayoutBoundaryEnabled(boolean enabled) {
+        sLayoutBoundaryEnabled = enabled;
+    }
+
+    public static boolean isLayoutBoundaryEnabled() {
+        return sLayoutBoundaryEnabled;
+    }
+
+    /** Returns the number of times draw measured and laid out a whole view tree. */
+    public static int getRelayoutCount() {
+        return sRelayoutCount.get();
+    }
+
+    public static void resetRelayoutCount() {
+        sRelayoutCount.set(0);
+    }
+
+    private static void relayout(View view, Rect bounds) {
+        sRelayoutCount.incrementAndGet();
+        measure(view, bounds);
+    }
+
+    /**
+     * Measures and lays out only the descendants that requested a layout. Returns false if any of
+     * them would change size, in which case the caller must lay out the whole tree.
+     */
+    private static boolean layoutChildrenLocally(View view) {
+        if (!(view instanceof ViewGroup)) {
+            return false;
+        }
+
+        ViewGroup viewGroup = (ViewGroup) view;
+        boolean hasDirtyChild = false;
+        for (int i = 0; i < viewGroup.getChildCount(); i++) {
+            View child = viewGroup.getChildAt(i);
+            if (child.getVisibility() == View.GONE || !child.isLayoutRequested()) {
+                continue;
+            }
+            hasDirtyChild = true;
+            if (!layoutChildrenLocally(child) && !layoutLocally(viewGroup, child)) {
+                return false;
+            }
+        }
+        if (!hasDirtyChild) {
+            // The view group itself asked for a layout.
+            return false;
+        }
+
+        // Every child kept its size, so this only re-positions them and clears our own request.
+        view.layout(view.getLeft(), view.getTop(), view.getRight(), view.getBottom());
+        return true;
+    }
+
+    /** Measures the child, and lays it out in place if it kept the same size. */
+    private static boolean layoutLocally(ViewGroup parent, View child) {
+        int width = child.getWidth();
+        int height = child.getHeight();
+        ViewGroup.LayoutParams params = child.getLayoutParams();
+        int horizontalMargins = 0;
+        int verticalMargins = 0;
+        if (params instanceof ViewGroup.MarginLayoutParams) {
+            ViewGroup.MarginLayoutParams marginParams = (ViewGroup.MarginLayoutParams) params;
+            horizontalMargins = marginParams.leftMargin + marginParams.rightMargin;
+            verticalMargins = marginParams.topMargin + marginParams.bottomMargin;
+        }
+
+        // Only wrap_content depends on the child's content. Anything else is decided by the parent.
+        int widthMeasureSpec = params != null && params.width == ViewGroup.LayoutParams.WRAP_CONTENT
+                ? View.MeasureSpec.makeMeasureSpec(Math.max(0, parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight() - horizontalMargins), View.MeasureSpec.AT_MOST)
+                : View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        int heightMeasureSpec = params != null && params.height == ViewGroup.LayoutParams.WRAP_CONTENT
+                ? View.MeasureSpec.makeMeasureSpec(Math.max(0, parent.getHeight() - parent.getPaddingTop() - parent.getPaddingBottom() - verticalMargins), View.MeasureSpec.AT_MOST)
+                : View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY);
+        child.measure(widthMeasureSpec, heightMeasureSpec);
+        if (child.getMeasuredWidth() != width || child.getMeasuredHeight() != height) {
+            return false;
+        }
+
+        child.layout(child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+        return true;
+    }
+
     private static void setForceSoftware(View view) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             setForceSoftware(view.getForeground());
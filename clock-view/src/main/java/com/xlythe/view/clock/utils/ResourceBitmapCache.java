@@ -0,0 +1,274 @@
+package com.xlythe.view.clock.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PaintFlagsDrawFilter;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.DrawableRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A cache of drawable resources rasterized into bitmaps, keyed by (resource, size, config, ambient)
+ * and by the configuration and theme they were loaded with. Drawables that are already loaded are
+ * keyed by their constant state instead of a resource id. Vector drawables are rasterized once
+ * at the exact size they'll be drawn at, instead of at their intrinsic size and then scaled.
+ *
+ * Bitmaps returned by the cache are shared, so they must not be modified or recycled. Once the
+ * cache holds more than {@link #getMaxSizeInBytes()}, the least recently used bitmaps are dropped.
+ * The cache is cleared when the configuration changes, and when the system asks us to trim memory.
+ */
+public class ResourceBitmapCache {
+    private static final int DEFAULT_MAX_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    // Ordered from least to most recently used.
+    private static final LinkedHashMap<Key, Bitmap> sBitmaps = new LinkedHashMap<>(16, 0.75f, true);
+    private static int sSizeInBytes;
+    private static int sMaxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+    private static boolean sRegisteredComponentCallbacks = false;
+
+    private ResourceBitmapCache() {}
+
+    /**
+     * Returns the resource as a bitmap of the given size. If width or height are 0, the resource is
+     * loaded at its intrinsic size. Ambient bitmaps are rasterized without anti-aliasing or
+     * filtering, for low-bit ambient screens.
+     */
+    @Nullable
+    public static Bitmap get(Context context, @DrawableRes int res, int width, int height, @NonNull Bitmap.Config config, boolean ambient) {
+        Key key = new Key(res, null, width, height, config, ambient, context.getResources().getConfiguration(), context.getTheme());
+        Bitmap bitmap = get(context, key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        bitmap = load(context, res, width, height, config, ambient);
+        if (bitmap != null) {
+            put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the drawable as a bitmap of the given size, like {@link #get(Context, int, int, int,
+     * Bitmap.Config, boolean)}. Drawables are keyed by their constant state, which is shared by
+     * every drawable loaded from the same resource (until it's mutated). The drawable's bounds are
+     * left untouched.
+     */
+    @NonNull
+    public static Bitmap get(Context context, @NonNull Drawable drawable, int width, int height, @NonNull Bitmap.Config config, boolean ambient) {
+        Drawable.ConstantState state = drawable.getConstantState();
+        Key key = new Key(0, state == null ? drawable : state, width, height, config, ambient, context.getResources().getConfiguration(), context.getTheme());
+        Bitmap bitmap = get(context, key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        Rect bounds = drawable.copyBounds();
+        bitmap = draw(drawable, width, height, config, ambient);
+        drawable.setBounds(bounds);
+        put(key, bitmap);
+        return bitmap;
+    }
+
+    @Nullable
+    private static Bitmap get(Context context, Key key) {
+        synchronized (sBitmaps) {
+            if (!sRegisteredComponentCallbacks) {
+                registerComponentCallbacks(context);
+                sRegisteredComponentCallbacks = true;
+            }
+
+            Bitmap bitmap = sBitmaps.get(key);
+            if (bitmap != null && !bitmap.isRecycled()) {
+                return bitmap;
+            }
+            return null;
+        }
+    }
+
+    private static void put(Key key, Bitmap bitmap) {
+        synchronized (sBitmaps) {
+            Bitmap previous = sBitmaps.put(key.copy(), bitmap);
+            if (previous != null) {
+                sSizeInBytes -= previous.getAllocationByteCount();
+            }
+            sSizeInBytes += bitmap.getAllocationByteCount();
+            trimToSize(sMaxSizeInBytes);
+        }
+    }
+
+    @Nullable
+    private static Bitmap load(Context context, @DrawableRes int res, int width, int height, Bitmap.Config config, boolean ambient) {
+        boolean intrinsicSize = width <= 0 || height <= 0;
+        if (intrinsicSize && !ambient) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = config;
+            Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), res, options);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        Drawable drawable = context.getDrawable(res);
+        if (drawable == null) {
+            return null;
+        }
+        return draw(drawable, width, height, config, ambient);
+    }
+
+    private static Bitmap draw(Drawable drawable, int width, int height, Bitmap.Config config, boolean ambient) {
+        if (width <= 0 || height <= 0) {
+            width = Math.max(1, drawable.getIntrinsicWidth());
+            height = Math.max(1, drawable.getIntrinsicHeight());
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        Canvas canvas = new Canvas(bitmap);
+        if (ambient) {
+            canvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG, 0));
+        }
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    private static void registerComponentCallbacks(Context context) {
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_BACKGROUND) {
+                    clear();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                // Bitmaps loaded for the old configuration won't be asked for again.
+                clear();
+            }
+
+            @Override
+            public void onLowMemory() {
+                clear();
+            }
+        });
+    }
+
+    /** Drops every bitmap held by the cache. */
+    public static void clear() {
+        synchronized (sBitmaps) {
+            trimToSize(0);
+        }
+    }
+
+    public static int getMaxSizeInBytes() {
+        synchronized (sBitmaps) {
+            return sMaxSizeInBytes;
+        }
+    }
+
+    public static void setMaxSizeInBytes(int maxSizeInBytes) {
+        synchronized (sBitmaps) {
+            sMaxSizeInBytes = maxSizeInBytes;
+            trimToSize(maxSizeInBytes);
+        }
+    }
+
+    /** Returns the number of bytes currently held by the cache. */
+    public static int getSizeInBytes() {
+        synchronized (sBitmaps) {
+            return sSizeInBytes;
+        }
+    }
+
+    /** Returns the number of bitmaps currently held by the cache. */
+    public static int size() {
+        synchronized (sBitmaps) {
+            return sBitmaps.size();
+        }
+    }
+
+    private static void trimToSize(int maxSizeInBytes) {
+        Iterator<Bitmap> iterator = sBitmaps.values().iterator();
+        while (sSizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            // Callers may still be drawing with the bitmap, so it's dropped rather than recycled.
+            sSizeInBytes -= bitmap.getAllocationByteCount();
+        }
+    }
+
+    private static final class Key {
+        private final int mRes;
+        // The constant state of a drawable that wasn't loaded by resource id.
+        @Nullable private final Object mDrawable;
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+        private final boolean mAmbient;
+        // Density, night mode and locale select which resource is loaded, and the theme resolves
+        // its attributes. Lookups use the context's live configuration, which is only copied
+        // (see #copy) once the key is inserted, as the context may change it later.
+        private final Configuration mConfiguration;
+        @Nullable private final Resources.Theme mTheme;
+
+        Key(int res, @Nullable Object drawable, int width, int height, Bitmap.Config config, boolean ambient, Configuration configuration, @Nullable Resources.Theme theme) {
+            mRes = res;
+            mDrawable = drawable;
+            mWidth = Math.max(0, width);
+            mHeight = Math.max(0, height);
+            mConfig = config;
+            mAmbient = ambient;
+            mConfiguration = configuration;
+            mTheme = theme;
+        }
+
+        /** Returns a key that can be held by the cache. */
+        Key copy() {
+            return new Key(mRes, mDrawable, mWidth, mHeight, mConfig, mAmbient, new Configuration(mConfiguration), mTheme);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mRes == key.mRes
+                    && mDrawable == key.mDrawable
+                    && mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && mConfig == key.mConfig
+                    && mAmbient == key.mAmbient
+                    && mConfiguration.equals(key.mConfiguration)
+                    && Objects.equals(mTheme, key.mTheme);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mRes;
+            result = 31 * result + System.identityHashCode(mDrawable);
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + mConfig.hashCode();
+            result = 31 * result + (mAmbient ? 1 : 0);
+            result = 31 * result + mConfiguration.hashCode();
+            result = 31 * result + (mTheme == null ? 0 : mTheme.hashCode());
+            return result;
+        }
+    }
+}
@@ -9,21 +9,35 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
 import com.google.android.gms.wearable.DataClient;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.MessageClient;
 import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
@@ -38,29 +52,57 @@ public class CommUtils {
     private static final String TAG = CommUtils.class.getSimpleName();
     private static final ExecutorService sExecutorService = Executors.newSingleThreadExecutor();
     private static final Handler sHandler = new Handler(Looper.getMainLooper());
-    private static final long TIMEOUT = 1000;
+    static final long TIMEOUT = 1000;
     private static final String EMPTY_VALUE = "com.xlythe.watchface.clock.utils.EMPTY_VALUE";
+    // Typed values are sent as a DataMap holding the value under this key. Strings are sent as
+    // raw bytes, as they always have been, so that older versions can still read them.
+    private static final String VALUE = "com.xlythe.watchface.clock.utils.VALUE";
+    private static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+    // Puts that haven't been sent yet. Only the latest value for each key is kept.
+    private static final Map<String, Object> sPendingWrites = new LinkedHashMap<>();
+    @Nullable
+    private static BugfixHelper sPendingBugfixHelper;
+    private static boolean sFlushScheduled = false;
+    private static long sFlushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    // Values read through get(), including keys that had no value. Entries are dropped by
+    // sDataChangedListener as soon as the data they were read from changes.
+    private static final Map<String, Object> sCache = new HashMap<>();
+    // Bumped whenever entries are dropped, so that reads that started before a change aren't cached.
+    private static int sCacheGeneration = 0;
+    private static final AtomicInteger sCacheHits = new AtomicInteger();
+    private static final AtomicInteger sCacheMisses = new AtomicInteger();
+    private static final DataClient.OnDataChangedListener sDataChangedListener = CommUtils::onDataChanged;
+    // Only touched on the executor.
+    private static boolean sDataChangedListenerRegistered = false;
 
     /**
-     * Send a message to all connected devices
+     * Send a message to all connected devices. The message is sent to every device at once, and
+     * each device has its own timeout. The returned task completes once every send has finished
+     * (or timed out).
      */
     @AnyThread
-    private static void broadcast(Context context, String path, String message) {
-        sExecutorService.submit(() -> {
-            try {
-                List<Node> nodes = Tasks.await(Wearable.getNodeClient(context).getConnectedNodes(), TIMEOUT, TimeUnit.MILLISECONDS);
-                for (Node n : nodes) {
-                    Tasks.await(Wearable.getMessageClient(context).sendMessage(n.getId(), path, message.getBytes()), TIMEOUT, TimeUnit.MILLISECONDS);
+    private static Task<Void> broadcast(Context context, String path, String message) {
+        // The executor only starts the sends. It never waits on them, so a slow device doesn't hold up puts and gets.
+        return Tasks.<Void>forResult(null).continueWithTask(sExecutorService, ignored -> {
+            NodeCache nodeCache = NodeCache.getInstance(context);
+            return nodeCache.getConnectedNodes().onSuccessTask(sExecutorService, nodes -> {
+                MessageClient messageClient = Wearable.getMessageClient(context);
+                byte[] data = message.getBytes(StandardCharsets.UTF_8);
+                List<Task<Integer>> tasks = new ArrayList<>(nodes.size());
+                for (Node node : nodes) {
+                    tasks.add(withTimeout(messageClient.sendMessage(node.getId(), path, data), TIMEOUT)
+                            .addOnFailureListener(e -> {
+                                Log.w(TAG, "Failed to call sendMessage on " + node.getId(), e);
+                                // The node may have gone away. Look them up again next time.
+                                nodeCache.invalidate();
+                            }));
                 }
-            } catch (ExecutionException e) {
-                Log.w(TAG, "Failed to call sendMessage", e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                Log.w(TAG, "Failed to call sendMessage", e);
-            } catch (TimeoutException e) {
-                Log.w(TAG, "Failed to call sendMessage", e);
-            }
-        });
+                return Tasks.whenAll(tasks);
+            });
+        })
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to call getConnectedNodes", e));
     }
 
     /**
@@ -68,18 +110,30 @@ public class CommUtils {
      */
     @AnyThread
     public static void unicast(Context context, String id, String path, String message) {
-        sExecutorService.submit(() -> {
-            try {
-                Tasks.await(Wearable.getMessageClient(context).sendMessage(id, path, message.getBytes()), TIMEOUT, TimeUnit.MILLISECONDS);
-            } catch (ExecutionException e) {
-                Log.w(TAG, "Failed to call sendMessage", e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                Log.w(TAG, "Failed to call sendMessage", e);
-            } catch (TimeoutException e) {
-                Log.w(TAG, "Failed to call sendMessage", e);
+        sExecutorService.submit(() -> withTimeout(Wearable.getMessageClient(context).sendMessage(id, path, message.getBytes(StandardCharsets.UTF_8)), TIMEOUT)
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to call sendMessage", e)));
+    }
+
+    /**
+     * Returns a task that fails with a {@link TimeoutException} if the given task doesn't complete
+     * in time. Unlike {@link Tasks#await(Task, long, TimeUnit)}, no thread is blocked while waiting.
+     */
+    @AnyThread
+    static <T> Task<T> withTimeout(Task<T> task, long timeoutMillis) {
+        TaskCompletionSource<T> source = new TaskCompletionSource<>();
+        Runnable timeout = () -> source.trySetException(new TimeoutException("Timed out after " + timeoutMillis + "ms"));
+        sHandler.postDelayed(timeout, timeoutMillis);
+        task.addOnCompleteListener(completedTask -> {
+            sHandler.removeCallbacks(timeout);
+            if (completedTask.isSuccessful()) {
+                source.trySetResult(completedTask.getResult());
+            } else if (completedTask.getException() != null) {
+                source.trySetException(completedTask.getException());
+            } else {
+                source.trySetException(new CancellationException());
             }
         });
+        return source.getTask();
     }
 
     /**
@@ -91,72 +145,343 @@ public class CommUtils {
     }
 
     /**
-     * Put a message that can be read on all devices
+     * Put an int that can be read on all devices. Typed values are stored in their binary form,
+     * instead of as a string.
      */
     @AnyThread
-    private static void put(Context context, String key, String value, boolean runBugfixHelper) {
-        final BugfixHelper bugfixHelper = runBugfixHelper ? new BugfixHelper(context) : null;
-        sExecutorService.submit(() -> {
-            if (bugfixHelper != null) {
-                bugfixHelper.onConnected(key, value);
+    public static void put(Context context, String key, int value) {
+        put(context, key, (Object) value, true /* runBugfixHelper */);
+    }
+
+    /**
+     * Put a float that can be read on all devices
+     */
+    @AnyThread
+    public static void put(Context context, String key, float value) {
+        put(context, key, (Object) value, true /* runBugfixHelper */);
+    }
+
+    /**
+     * Put a boolean that can be read on all devices
+     */
+    @AnyThread
+    public static void put(Context context, String key, boolean value) {
+        put(context, key, (Object) value, true /* runBugfixHelper */);
+    }
+
+    /**
+     * Put raw bytes that can be read on all devices
+     */
+    @AnyThread
+    public static void put(Context context, String key, @NonNull byte[] value) {
+        put(context, key, (Object) value.clone(), true /* runBugfixHelper */);
+    }
+
+    /**
+     * Put a map of values (which may hold further maps) that can be read on all devices
+     */
+    @AnyThread
+    public static void put(Context context, String key, @NonNull DataMap value) {
+        DataMap copy = new DataMap();
+        copy.putAll(value);
+        put(context, key, (Object) copy, true /* runBugfixHelper */);
+    }
+
+    /**
+     * Put a message that can be read on all devices. Puts are held for the flush interval, and
+     * then sent together. If a key is put more than once in that time, only the last value is sent.
+     * Each key is still its own data item, at /key.
+     */
+    @AnyThread
+    private static void put(Context context, String key, Object value, boolean runBugfixHelper) {
+        synchronized (sPendingWrites) {
+            sPendingWrites.put(key, value);
+            if (runBugfixHelper && sPendingBugfixHelper == null) {
+                sPendingBugfixHelper = new BugfixHelper(context);
             }
+            scheduleFlush(context.getApplicationContext(), sFlushInterval);
+        }
 
-            PutDataRequest request = PutDataRequest.create("/" + key);
-            request.setData(value.getBytes());
+        // Reads go to the first connected device, which may not be this one, so our own value isn't
+        // cached. The cached value is dropped instead, and reads already in flight aren't cached.
+        synchronized (sCache) {
+            sCache.remove(key);
+            sCacheGeneration++;
+        }
+    }
 
-            try {
-                Tasks.await(Wearable.getDataClient(context).putDataItem(request), TIMEOUT, TimeUnit.MILLISECONDS);
-            } catch (ExecutionException e) {
-                Log.w(TAG, "Failed to call putDataItem", e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                Log.w(TAG, "Failed to call putDataItem", e);
-            } catch (TimeoutException e) {
-                Log.w(TAG, "Failed to call putDataItem", e);
+    /** Flushes after the given delay, unless a flush is already scheduled. Requires sPendingWrites. */
+    private static void scheduleFlush(Context applicationContext, long delay) {
+        if (!sFlushScheduled) {
+            sFlushScheduled = true;
+            sHandler.postDelayed(() -> sExecutorService.submit(() -> flush(applicationContext)), delay);
+        }
+    }
+
+    /**
+     * Sets how long puts are held before they're sent, in milliseconds. A longer interval merges
+     * more puts (eg. from a slider being dragged) into one write. Defaults to 100ms.
+     */
+    @AnyThread
+    public static void setFlushInterval(long flushInterval) {
+        synchronized (sPendingWrites) {
+            sFlushInterval = flushInterval;
+        }
+    }
+
+    @AnyThread
+    public static long getFlushInterval() {
+        synchronized (sPendingWrites) {
+            return sFlushInterval;
+        }
+    }
+
+    /** Returns the puts that haven't been sent yet. */
+    static Map<String, Object> getPendingWrites() {
+        synchronized (sPendingWrites) {
+            return new LinkedHashMap<>(sPendingWrites);
+        }
+    }
+
+    /** Drops every pending put without sending it. */
+    static void clearPendingWrites() {
+        synchronized (sPendingWrites) {
+            sPendingWrites.clear();
+            sPendingBugfixHelper = null;
+            sFlushScheduled = false;
+        }
+    }
+
+    /**
+     * Sends every pending put. The keys are sent at once, and waited on together.
+     */
+    @WorkerThread
+    private static void flush(Context context) {
+        Map<String, Object> writes;
+        BugfixHelper bugfixHelper;
+        synchronized (sPendingWrites) {
+            writes = new LinkedHashMap<>(sPendingWrites);
+            bugfixHelper = sPendingBugfixHelper;
+            sPendingWrites.clear();
+            sPendingBugfixHelper = null;
+            sFlushScheduled = false;
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        if (bugfixHelper != null) {
+            bugfixHelper.onConnected(writes);
+        }
+        send(context, writes);
+    }
+
+    @WorkerThread
+    private static void send(Context context, Map<String, Object> values) {
+        DataClient dataClient = Wearable.getDataClient(context);
+        List<Task<DataItem>> tasks = new ArrayList<>(values.size());
+        for (PutDataRequest request : createRequests(values)) {
+            tasks.add(dataClient.putDataItem(request));
+        }
+
+        try {
+            Tasks.await(Tasks.whenAll(tasks), TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed to call putDataItem", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Failed to call putDataItem", e);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Failed to call putDataItem", e);
+        }
+    }
+
+    /** Returns one request per key, at /key. */
+    static List<PutDataRequest> createRequests(Map<String, Object> values) {
+        List<PutDataRequest> requests = new ArrayList<>(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String path = "/" + entry.getKey();
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                PutDataRequest request = PutDataRequest.create(path);
+                request.setData(((String) value).getBytes(StandardCharsets.UTF_8));
+                requests.add(request);
+            } else {
+                PutDataMapRequest request = PutDataMapRequest.create(path);
+                putValue(request.getDataMap(), VALUE, value);
+                requests.add(request.asPutDataRequest());
             }
-        });
+        }
+        return requests;
     }
 
     /**
-     * Retrieve a message saved via put
+     * Retrieve a message saved via put. Values that were read before, and haven't changed since,
+     * are returned from memory. If called on the main thread, the callback is then invoked
+     * immediately.
      */
     @AnyThread
     public static void get(Context context, String key, Callback callback) {
+        get(context, key, false /* refresh */, callback);
+    }
+
+    /**
+     * Retrieve a message saved via put. If {@code refresh} is set, a value returned from memory is
+     * also read again in the background, and the callback is invoked a second time if it changed.
+     */
+    @AnyThread
+    public static void get(Context context, String key, boolean refresh, Callback callback) {
+        getValue(context, key, refresh, value -> callback.onCallback(asString(value)));
+    }
+
+    /**
+     * Retrieve a value saved via any of the puts. The value is given back in the type it was put
+     * as: a String, Integer, Float, Boolean, byte[] or DataMap.
+     */
+    @AnyThread
+    public static void getValue(Context context, String key, ValueCallback callback) {
+        getValue(context, key, false /* refresh */, callback);
+    }
+
+    /**
+     * Retrieve a value saved via any of the puts. See {@link #get(Context, String, boolean, Callback)}.
+     */
+    @AnyThread
+    public static void getValue(Context context, String key, boolean refresh, ValueCallback callback) {
+        boolean hit;
+        Object cachedValue;
+        synchronized (sCache) {
+            hit = sCache.containsKey(key);
+            cachedValue = sCache.get(key);
+        }
+
+        if (hit) {
+            sCacheHits.incrementAndGet();
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                callback.onCallback(cachedValue);
+            } else {
+                sHandler.post(() -> callback.onCallback(cachedValue));
+            }
+            if (!refresh) {
+                return;
+            }
+        } else {
+            sCacheMisses.incrementAndGet();
+        }
+
         sExecutorService.submit(() -> {
-            String value = get(context, key);
-            sHandler.post(() -> callback.onCallback(value));
+            int generation;
+            synchronized (sCache) {
+                generation = sCacheGeneration;
+            }
+
+            Object value;
+            try {
+                // Listen before reading, so that a change made while we read isn't missed.
+                registerDataChangedListener(context);
+                value = getValue(context, key);
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to call getDataItem", e);
+                value = null;
+                generation = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Log.w(TAG, "Failed to call getDataItem", e);
+                value = null;
+                generation = -1;
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Failed to call getDataItem", e);
+                value = null;
+                generation = -1;
+            }
+
+            synchronized (sCache) {
+                // Failed reads (generation -1) and reads that raced a change aren't cached.
+                if (generation == sCacheGeneration) {
+                    sCache.put(key, value);
+                }
+            }
+
+            if (!hit || !Objects.deepEquals(cachedValue, value)) {
+                Object result = value;
+                sHandler.post(() -> callback.onCallback(result));
+            }
         });
     }
 
     /**
-     * Retrieve a message saved via put
+     * Retrieve a value saved via put
      */
     @WorkerThread
     @Nullable
-    private static String get(Context context, String key) {
+    private static Object getValue(Context context, String key) throws ExecutionException, InterruptedException, TimeoutException {
         // We want a node id. Remote is better, I guess.
-        try {
-            List<Node> nodes = Tasks.await(Wearable.getNodeClient(context).getConnectedNodes(), TIMEOUT, TimeUnit.MILLISECONDS);
+        // Node lookups are cached, so these usually return without waiting.
+        NodeCache nodeCache = NodeCache.getInstance(context);
+        List<Node> nodes = Tasks.await(nodeCache.getConnectedNodes(), TIMEOUT, TimeUnit.MILLISECONDS);
 
-            Node node = nodes.isEmpty() ?
-                    Tasks.await(Wearable.getNodeClient(context).getLocalNode(), TIMEOUT, TimeUnit.MILLISECONDS) : nodes.get(0);
+        Node node = nodes.isEmpty() ?
+                Tasks.await(nodeCache.getLocalNode(), TIMEOUT, TimeUnit.MILLISECONDS) : nodes.get(0);
 
-            // Figure out the uri...
-            Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).authority(node.getId()).path("/" + key).build();
+        // Figure out the uri...
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).authority(node.getId()).path("/" + key).build();
 
-            // Open up the uri
-            DataItem dataItem = Tasks.await(Wearable.getDataClient(context).getDataItem(uri), TIMEOUT, TimeUnit.MILLISECONDS);
-            return CommUtils.toString(dataItem);
-        } catch (ExecutionException e) {
-            Log.w(TAG, "Failed to call getDataItem", e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            Log.w(TAG, "Failed to call getDataItem", e);
-        } catch (TimeoutException e) {
-            Log.w(TAG, "Failed to call getDataItem", e);
+        // Open up the uri
+        DataItem dataItem = Tasks.await(Wearable.getDataClient(context).getDataItem(uri), TIMEOUT, TimeUnit.MILLISECONDS);
+        return readValue(dataItem);
+    }
+
+    @WorkerThread
+    private static void registerDataChangedListener(Context context) throws ExecutionException, InterruptedException, TimeoutException {
+        if (sDataChangedListenerRegistered) {
+            return;
         }
+        Tasks.await(Wearable.getDataClient(context.getApplicationContext()).addListener(sDataChangedListener), TIMEOUT, TimeUnit.MILLISECONDS);
+        sDataChangedListenerRegistered = true;
+    }
 
-        return null;
+    /**
+     * Drops cached values whose data changed.
+     */
+    @AnyThread
+    static void onDataChanged(DataEventBuffer dataEvents) {
+        synchronized (sCache) {
+            sCacheGeneration++;
+            for (DataEvent event : dataEvents) {
+                String path = event.getDataItem().getUri().getPath();
+                if (path != null && path.startsWith("/")) {
+                    sCache.remove(path.substring(1));
+                }
+            }
+        }
+    }
+
+    /** Returns the number of reads that were answered from memory. */
+    @AnyThread
+    public static int getCacheHitCount() {
+        return sCacheHits.get();
+    }
+
+    /** Returns the number of reads that had to ask the data layer. */
+    @AnyThread
+    public static int getCacheMissCount() {
+        return sCacheMisses.get();
+    }
+
+    /** Drops every cached value, and resets the hit and miss counts. */
+    static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+            sCacheGeneration++;
+        }
+        sCacheHits.set(0);
+        sCacheMisses.set(0);
+    }
+
+    static void putCachedValue(String key, @Nullable Object value) {
+        synchronized (sCache) {
+            sCache.put(key, value);
+        }
     }
 
     /**
@@ -165,19 +490,115 @@ public class CommUtils {
     @AnyThread
     @Nullable
     public static String get(DataEventBuffer dataEvents, String key) {
+        return asString(getValue(dataEvents, key));
+    }
+
+    /**
+     * Retrieve a value saved via any of the puts, in the type it was put as.
+     */
+    @AnyThread
+    @Nullable
+    public static Object getValue(DataEventBuffer dataEvents, String key) {
         for (DataEvent event : dataEvents) {
-            if (event.getDataItem().getUri().getPath().equals("/" + key)) {
-                return CommUtils.toString(event.getDataItem());
+            if (("/" + key).equals(event.getDataItem().getUri().getPath())) {
+                return readValue(event.getDataItem());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieve an int saved via put. Values that were put as a string are parsed.
+     */
+    @AnyThread
+    public static int getInt(DataEventBuffer dataEvents, String key, int defaultValue) {
+        Object value = getValue(dataEvents, key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt((String) value);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Failed to parse " + key + " as an int", e);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve a float saved via put. Values that were put as a string are parsed.
+     */
+    @AnyThread
+    public static float getFloat(DataEventBuffer dataEvents, String key, float defaultValue) {
+        Object value = getValue(dataEvents, key);
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Float.parseFloat((String) value);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Failed to parse " + key + " as a float", e);
             }
         }
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve a boolean saved via put. Values that were put as "true" or "false" are parsed.
+     */
+    @AnyThread
+    public static boolean getBoolean(DataEventBuffer dataEvents, String key, boolean defaultValue) {
+        Object value = getValue(dataEvents, key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if ("true".equalsIgnoreCase(String.valueOf(value))) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(String.valueOf(value))) {
+            return false;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve bytes saved via put. Values that were put as a string are returned as UTF-8.
+     */
+    @AnyThread
+    @Nullable
+    public static byte[] getByteArray(DataEventBuffer dataEvents, String key) {
+        Object value = getValue(dataEvents, key);
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
         return null;
     }
 
+    /**
+     * Retrieve a map saved via put
+     */
+    @AnyThread
+    @Nullable
+    public static DataMap getDataMap(DataEventBuffer dataEvents, String key) {
+        Object value = getValue(dataEvents, key);
+        return value instanceof DataMap ? (DataMap) value : null;
+    }
+
     public interface Callback {
         @UiThread
         void onCallback(@Nullable String result);
     }
 
+    public interface ValueCallback {
+        @UiThread
+        void onCallback(@Nullable Object result);
+    }
+
     private static class ActivityLifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
         @Override
         public void onActivityCreated(Activity activity, Bundle bundle) {
@@ -262,25 +683,39 @@ public class CommUtils {
         }
 
         @WorkerThread
-        void onConnected(final String key, final String value) {
+        void onConnected(final Map<String, Object> values) {
             mListener = new DataClient.OnDataChangedListener() {
                 @Override
                 public void onDataChanged(@NonNull DataEventBuffer dataEventBuffer) {
-                    if (equals(value, get(dataEventBuffer, key))) {
-                        Log.v(TAG, "Sync detected properly. Bugfix canceled.");
-                        cleanup();
+                    for (Map.Entry<String, Object> entry : values.entrySet()) {
+                        // Byte arrays are compared by content
+                        if (!Objects.deepEquals(entry.getValue(), getValue(dataEventBuffer, entry.getKey()))) {
+                            return;
+                        }
                     }
-                }
-
-                private boolean equals(@Nullable Object a, @Nullable Object b) {
-                    return a == b || (a != null && a.equals(b));
+                    Log.v(TAG, "Sync detected properly. Bugfix canceled.");
+                    cleanup();
                 }
             };
             Wearable.getDataClient(mContext).addListener(mListener);
             mHandler.postDelayed(() -> {
                 Log.v(TAG, "Failed to detect sync. Retrying.");
-                CommUtils.put(mContext, key, EMPTY_VALUE, false /* runBugfixHelper */);
-                CommUtils.put(mContext, key, value, false /* runBugfixHelper */);
+                Map<String, Object> emptyValues = new LinkedHashMap<>();
+                Map<String, Object> retries = new LinkedHashMap<>();
+                synchronized (sPendingWrites) {
+                    for (Map.Entry<String, Object> entry : values.entrySet()) {
+                        // A newer put is already on its way.
+                        if (!sPendingWrites.containsKey(entry.getKey())) {
+                            emptyValues.put(entry.getKey(), EMPTY_VALUE);
+                            retries.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                // These skip the write-behind queue, which would merge the empty value away.
+                sExecutorService.submit(() -> {
+                    send(mContext, emptyValues);
+                    send(mContext, retries);
+                });
                 cleanup();
             }, BUGFIX_DELAY);
         }
@@ -301,13 +736,72 @@ public class CommUtils {
 
     @Nullable
     private static String toString(@Nullable DataItem dataItem) {
-        if (dataItem != null) {
+        if (dataItem != null && dataItem.getData() != null) {
             // Parse the bytes into something useful
-            String value = new String(dataItem.getData());
-            if (!EMPTY_VALUE.equals(value)) {
-                return value;
-            }
+            return toString(new String(dataItem.getData(), StandardCharsets.UTF_8));
         }
         return null;
     }
+
+    @Nullable
+    private static String toString(@Nullable String value) {
+        return EMPTY_VALUE.equals(value) ? null : value;
+    }
+
+    /** Maps the EMPTY_VALUE sentinel back to null. Other values are returned as is. */
+    @Nullable
+    private static Object toValue(@Nullable Object value) {
+        return value instanceof String ? toString((String) value) : value;
+    }
+
+    /** Returns the value as a string, for callers that read values as strings. */
+    @Nullable
+    private static String asString(@Nullable Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value.toString();
+    }
+
+    private static void putValue(DataMap dataMap, String key, Object value) {
+        if (value instanceof Integer) {
+            dataMap.putInt(key, (Integer) value);
+        } else if (value instanceof Float) {
+            dataMap.putFloat(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            dataMap.putBoolean(key, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            dataMap.putByteArray(key, (byte[]) value);
+        } else if (value instanceof DataMap) {
+            dataMap.putDataMap(key, (DataMap) value);
+        } else {
+            dataMap.putString(key, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Returns the value held by a data item: the typed value, if it was put as one, or otherwise
+     * the string.
+     */
+    @Nullable
+    private static Object readValue(@Nullable DataItem dataItem) {
+        if (dataItem == null || dataItem.getData() == null) {
+            return null;
+        }
+
+        DataMap dataMap;
+        try {
+            dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+        } catch (RuntimeException e) {
+            // A string, which isn't a DataMap.
+            dataMap = null;
+        }
+        if (dataMap != null && dataMap.containsKey(VALUE)) {
+            return dataMap.get(VALUE);
+        }
+        return toString(dataItem);
+    }
 }
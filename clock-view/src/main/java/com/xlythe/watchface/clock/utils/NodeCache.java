@@ -0,0 +1,135 @@
+package com.xlythe.watchface.clock.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.gms.wearable.CapabilityClient;
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The devices we can talk to, cached so that sending a message doesn't first need a round trip to
+ * ask who's connected. The cache is refreshed whenever a device's capabilities change (which is
+ * also the case when a device connects or disconnects), and whenever a lookup misses. An empty
+ * list is never treated as a hit.
+ */
+class NodeCache {
+    private static final String TAG = NodeCache.class.getSimpleName();
+    // Matches every capability, so that we hear about every device that comes and goes.
+    private static final Uri ALL_CAPABILITIES = Uri.parse("wear://");
+
+    @Nullable
+    private static NodeCache sInstance;
+
+    private final NodeClient mNodeClient;
+    private final long mTimeout;
+    private final CapabilityClient.OnCapabilityChangedListener mListener = this::onCapabilityChanged;
+
+    @Nullable
+    private List<Node> mConnectedNodes;
+    @Nullable
+    private Node mLocalNode;
+    // The refresh in flight, if any, so that concurrent misses share one lookup.
+    @Nullable
+    private Task<List<Node>> mRefreshTask;
+
+    @AnyThread
+    static synchronized NodeCache getInstance(Context context) {
+        if (sInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            sInstance = new NodeCache(Wearable.getNodeClient(applicationContext), Wearable.getCapabilityClient(applicationContext), CommUtils.TIMEOUT);
+        }
+        return sInstance;
+    }
+
+    NodeCache(NodeClient nodeClient, CapabilityClient capabilityClient, long timeout) {
+        mNodeClient = nodeClient;
+        mTimeout = timeout;
+        capabilityClient.addListener(mListener, ALL_CAPABILITIES, CapabilityClient.FILTER_PREFIX);
+    }
+
+    /**
+     * Returns the connected devices. If they're cached, the returned task has already completed.
+     * No connected devices counts as a miss, as we only hear about devices that advertise a
+     * capability, and one that doesn't would otherwise never be found.
+     */
+    @AnyThread
+    synchronized Task<List<Node>> getConnectedNodes() {
+        if (mConnectedNodes != null && !mConnectedNodes.isEmpty()) {
+            return Tasks.forResult(mConnectedNodes);
+        }
+        return refresh();
+    }
+
+    /**
+     * Returns this device. If it's cached, the returned task has already completed.
+     */
+    @AnyThread
+    synchronized Task<Node> getLocalNode() {
+        if (mLocalNode != null) {
+            return Tasks.forResult(mLocalNode);
+        }
+        return CommUtils.withTimeout(mNodeClient.getLocalNode(), mTimeout).addOnSuccessListener(node -> {
+            synchronized (NodeCache.this) {
+                mLocalNode = node;
+            }
+        });
+    }
+
+    /**
+     * Looks up the connected devices again. Lookups made in the meantime wait on this one.
+     */
+    @AnyThread
+    synchronized Task<List<Node>> refresh() {
+        if (mRefreshTask != null && !mRefreshTask.isComplete()) {
+            return mRefreshTask;
+        }
+
+        final Task<List<Node>> task = CommUtils.withTimeout(mNodeClient.getConnectedNodes(), mTimeout);
+        mRefreshTask = task;
+        task.addOnCompleteListener(completedTask -> {
+            synchronized (NodeCache.this) {
+                if (mRefreshTask != task) {
+                    // Replaced by a newer refresh.
+                    return;
+                }
+                if (completedTask.isSuccessful()) {
+                    mConnectedNodes = Collections.unmodifiableList(completedTask.getResult());
+                } else {
+                    Log.w(TAG, "Failed to refresh connected nodes", completedTask.getException());
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Forgets the connected devices (eg. after a send to one of them failed). The next lookup will
+     * ask for them again.
+     */
+    @AnyThread
+    synchronized void invalidate() {
+        mConnectedNodes = null;
+    }
+
+    private void onCapabilityChanged(@NonNull CapabilityInfo capabilityInfo) {
+        Log.v(TAG, "Capability " + capabilityInfo.getName() + " changed. Refreshing connected nodes.");
+        synchronized (this) {
+            // Start a new lookup even if one is in flight, as it may have started before the change.
+            mRefreshTask = null;
+        }
+        refresh();
+    }
+}
@@ -8,22 +8,57 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
 import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.text.format.DateFormat;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
+import android.widget.ImageView;
 import android.widget.RemoteViews;
+import android.widget.TextView;
 
 import com.xlythe.view.clock.ClockView;
 import com.xlythe.view.clock.R;
+import com.xlythe.view.clock.utils.BitmapPool;
 import com.xlythe.view.clock.utils.BitmapUtils;
 import com.xlythe.view.clock.utils.MathUtils;
+import com.xlythe.view.clock.utils.ResourceBitmapCache;
 
 import androidx.annotation.Nullable;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 public abstract class ClockWidget extends AppWidgetProvider {
     public static final String ACTION_CLOCK_WIDGET_UPDATE = "com.xlythe.widget.clock.CLOCK_WIDGET_UPDATE";
     public static final String EXTRA_APP_WIDGET_ID = "app_widget_id";
@@ -31,8 +66,57 @@ public abstract class ClockWidget extends AppWidgetProvider {
     private static final boolean DEBUG = false;
     private static final String PREFERENCE_PREAMBLE = "settings_";
     private static final String PREFERENCE_WIDGET_SIZE_PREAMBLE = PREFERENCE_PREAMBLE + "widget_size_";
+    private static final int MAX_CACHED_CLOCK_VIEWS = 4;
+    // Broadcasts handled with goAsync() should finish within 10 seconds. Leave some room to send the results.
+    private static final long UPDATE_DEADLINE_MILLIS = 9 * 1000;
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    // Android 12+ extends inexact windows shorter than this, which is too late for a clock.
+    private static final long MIN_PLATFORM_WINDOW_MILLIS = 10 * MINUTE_MILLIS;
+    // Given to AnalogClock for clocks without a background. It's shared, so that its bitmap is cached.
+    private static final Drawable EMPTY_DIAL = new ColorDrawable(Color.TRANSPARENT);
+
+    // Renders widgets of different sizes in parallel. Widgets of the same size share a ClockView,
+    // so they're rendered one after another on the same thread.
+    private static final ThreadPoolExecutor sRenderExecutor = newExecutor(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), "ClockWidgetRender");
+    // Runs one batch of updates at a time, so that batches don't race each other for the same views.
+    private static final ThreadPoolExecutor sBatchExecutor = newExecutor(1, "ClockWidgetBatch");
+
+    // Clock views, already measured for their size, shared by every widget of that size. This is
+    // static because a new AppWidgetProvider is created for every broadcast.
+    private static final Map<ClockViewKey, ClockView> sClockViews = new LinkedHashMap<ClockViewKey, ClockView>(MAX_CACHED_CLOCK_VIEWS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ClockViewKey, ClockView> eldest) {
+            return size() > MAX_CACHED_CLOCK_VIEWS;
+        }
+    };
+
+    // The layout last sent to each widget. Once a widget has the bitmap layout, ticks only send
+    // the new bitmap. This is lost with the process, after which widgets are fully updated again.
+    private static final Map<Integer, Integer> sPushedLayouts = new HashMap<>();
+    // Widget sizes, in pixels, mirrored from the shared preferences so that updates don't read them.
+    // Widgets without a stored size map to NO_WIDGET_SIZE.
+    private static final SparseIntArray sWidgetSizes = new SparseIntArray();
+    private static final int NO_WIDGET_SIZE = -1;
+    // Bytes of bitmaps sent to the launcher since the process started.
+    private static final AtomicLong sBytesSent = new AtomicLong();
+    // Widgets whose frames are queued to be rendered ahead.
+    private static final Set<Integer> sRenderAheadWidgets = new HashSet<>();
 
-    private ClockView mClockView;
+    /** How widgets are drawn. */
+    public enum WidgetMode {
+        /**
+         * The ClockView is drawn into a bitmap, and sent to the launcher every minute. This
+         * requires waking up the app every minute.
+         */
+        BITMAP,
+        /**
+         * The ClockView is translated into a TextClock (digital) or AnalogClock (analog, Android 12+)
+         * that the launcher keeps up to date on its own. The app isn't woken up to tick. Clocks that
+         * can't be translated fall back to BITMAP.
+         */
+        SYSTEM_CLOCK
+    }
 
     private static String TAG(int appId) {
         return TAG + "[" + appId + "]";
@@ -40,30 +124,56 @@ public abstract class ClockWidget extends AppWidgetProvider {
 
     @Override
     public void onUpdate(final Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
+        // The launcher may have lost the widget's views (eg. it restarted), so send them in full.
+        // The widget's settings may have changed as well, so frames rendered ahead are redrawn.
         for (int appWidgetID : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetID);
+            new WidgetFrameCache(context, appWidgetID).delete();
+            updateAppWidget(context, appWidgetManager, appWidgetID, false);
         }
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (ACTION_CLOCK_WIDGET_UPDATE.equals(intent.getAction())) {
+        // When the clock is changed, the next tick may no longer land on the minute. Redraw, and
+        // schedule the next tick from the new time.
+        boolean timeChanged = Intent.ACTION_TIME_CHANGED.equals(intent.getAction())
+                || Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction());
+        if (ACTION_CLOCK_WIDGET_UPDATE.equals(intent.getAction()) || timeChanged) {
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+            final int[] appWidgetIds;
             if (intent.hasExtra(EXTRA_APP_WIDGET_ID)) {
-                updateAppWidget(context, appWidgetManager, intent.getIntExtra(EXTRA_APP_WIDGET_ID, 0));
+                appWidgetIds = new int[] { intent.getIntExtra(EXTRA_APP_WIDGET_ID, 0) };
             } else {
-                int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context, getClass()));
+                appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(context, getClass()));
+            }
+            if (timeChanged) {
+                // Frames rendered ahead were drawn for the old time.
                 for (int appWidgetID : appWidgetIds) {
-                    updateAppWidget(context, appWidgetManager, appWidgetID);
+                    new WidgetFrameCache(context, appWidgetID).delete();
                 }
             }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-                try {
-                    alarmManager.setExact(AlarmManager.RTC, System.currentTimeMillis() + 60 * 1000, createClockTickIntent(context));
-                } catch (SecurityException e) {
-                    // Android 14+ exact alarm permission missing, ignore
+
+            final PendingResult pendingResult = goAsync();
+            if (pendingResult == null) {
+                // We weren't dispatched by the system (eg. onReceive was called directly), so
+                // there's no way to finish later. Update in place.
+                for (int appWidgetID : appWidgetIds) {
+                    updateAppWidget(context, appWidgetManager, appWidgetID, !timeChanged);
                 }
+            } else {
+                sBatchExecutor.execute(() -> {
+                    try {
+                        updateAppWidgetsInParallel(context, appWidgetManager, appWidgetIds, !timeChanged);
+                    } finally {
+                        pendingResult.finish();
+                    }
+                });
+            }
+
+            // System clocks tick on their own. If any widget fell back to a bitmap, it schedules the next tick itself.
+            if (getWidgetMode(context) == WidgetMode.BITMAP) {
+                // A repeating alarm set before the change would keep ticking off the minute, so replace it.
+                scheduleClockTick(context, timeChanged);
             }
         } else {
             super.onReceive(context, intent);
@@ -77,27 +187,217 @@ public abstract class ClockWidget extends AppWidgetProvider {
         return null;
     }
 
-    private void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        // Create a clock view
-        mClockView = onCreateClockView(context, mClockView, appWidgetId);
-        if (mClockView == null) {
-            Log.w(TAG(appWidgetId), "Ignoring widget. No clock provided.");
-            return;
+    /**
+     * Override to render this many minutes of frames at once, while the process is awake anyway.
+     * Frames are kept in the cache directory, and following ticks only decode and send the frame
+     * for that minute. Only use this for clocks that depend on nothing but the time, as the clock
+     * is drawn at future times and its time is reset afterwards. Defaults to 0 (disabled).
+     */
+    public int getRenderAheadMinutes(Context context) {
+        return 0;
+    }
+
+    /**
+     * Override to describe any state, besides the time, that frames rendered ahead depend on (eg.
+     * the watch face and its settings). Frames are only reused while this returns the same value.
+     * Defaults to an empty string.
+     */
+    public String getRenderAheadKey(Context context, int appWidgetId) {
+        return "";
+    }
+
+    /**
+     * Override to let the system delay a tick by up to this many milliseconds past the minute, so
+     * that it can be batched with other alarms. Defaults to 0, where ticks land exactly on the
+     * minute. Because Android 12+ extends windows shorter than 10 minutes, shorter windows are
+     * only honored on older versions.
+     */
+    public long getUpdateWindowMillis(Context context) {
+        return 0;
+    }
+
+    /**
+     * Returns the most bytes a widget's bitmap may take. Widgets that would be larger are drawn at
+     * a lower resolution, and scaled up by the launcher. Defaults to the limit the system puts on
+     * bitmaps sent through RemoteViews, which is 1.5x the screen at 4 bytes per pixel. Override
+     * to send less per tick.
+     */
+    public int getMaxBitmapBytes(Context context) {
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        return (int) (1.5f * displayMetrics.widthPixels * displayMetrics.heightPixels * 4);
+    }
+
+    /** Override to draw widgets with {@link WidgetMode#SYSTEM_CLOCK}. Defaults to {@link WidgetMode#BITMAP}. */
+    public WidgetMode getWidgetMode(Context context) {
+        return WidgetMode.BITMAP;
+    }
+
+    /**
+     * Draws and sends the widget. If {@code partial} is set, and the widget already has the bitmap
+     * layout, only the new bitmap is sent.
+     */
+    private void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId, boolean partial) {
+        RenderedWidget renderedWidget = renderAppWidget(context, appWidgetId, partial);
+        if (renderedWidget != null) {
+            pushAppWidget(appWidgetManager, renderedWidget);
+        }
+    }
+
+    /**
+     * Renders every widget, then sends the results. Widgets are grouped by size, and each group is
+     * rendered on its own thread. Groups that haven't finished by the broadcast deadline are skipped.
+     * Their renders aren't interrupted, as that would leave shared views half drawn. They finish,
+     * and their results are dropped.
+     */
+    private void updateAppWidgetsInParallel(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds, boolean partial) {
+        long startTime = SystemClock.elapsedRealtime();
+
+        Map<Integer, List<Integer>> appWidgetIdsBySize = new LinkedHashMap<>();
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetIdsBySize.computeIfAbsent(getWidgetSize(context, appWidgetId), size -> new ArrayList<>()).add(appWidgetId);
+        }
+
+        AtomicBoolean deadlinePassed = new AtomicBoolean(false);
+        List<Future<List<RenderedWidget>>> futures = new ArrayList<>(appWidgetIdsBySize.size());
+        for (List<Integer> group : appWidgetIdsBySize.values()) {
+            futures.add(sRenderExecutor.submit(() -> {
+                List<RenderedWidget> renderedWidgets = new ArrayList<>(group.size());
+                for (int appWidgetId : group) {
+                    if (deadlinePassed.get()) {
+                        break;
+                    }
+                    RenderedWidget renderedWidget = renderAppWidget(context, appWidgetId, partial);
+                    if (renderedWidget != null) {
+                        renderedWidgets.add(renderedWidget);
+                    }
+                }
+                if (deadlinePassed.get()) {
+                    // No one is waiting for these anymore.
+                    for (RenderedWidget renderedWidget : renderedWidgets) {
+                        BitmapPool.recycle(renderedWidget.mBitmap);
+                    }
+                    renderedWidgets.clear();
+                }
+                return renderedWidgets;
+            }));
+        }
+
+        int updatedWidgets = 0;
+        long bytesSent = 0;
+        for (Future<List<RenderedWidget>> future : futures) {
+            long remainingMillis = UPDATE_DEADLINE_MILLIS - (SystemClock.elapsedRealtime() - startTime);
+            try {
+                for (RenderedWidget renderedWidget : future.get(Math.max(0, remainingMillis), TimeUnit.MILLISECONDS)) {
+                    bytesSent += pushAppWidget(appWidgetManager, renderedWidget);
+                    updatedWidgets++;
+                }
+            } catch (TimeoutException e) {
+                deadlinePassed.set(true);
+                Log.w(TAG, "Ran out of time while rendering widgets");
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error rendering widgets", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
 
-        mClockView.setSecondsEnabled(false);
-        mClockView.setMillisecondsEnabled(false);
+        if (DEBUG) {
+            Log.v(TAG, String.format(Locale.US, "Updated %d of %d widgets (%d bytes) in %dms",
+                    updatedWidgets, appWidgetIds.length, bytesSent, SystemClock.elapsedRealtime() - startTime));
+        }
+    }
 
+    /** Draws the widget. Returns null if there's nothing to draw. */
+    @Nullable
+    private RenderedWidget renderAppWidget(Context context, int appWidgetId, boolean partial) {
         // Set the bounds
         int clockSize = getWidgetSize(context, appWidgetId);
         Rect rect = new Rect(0, 0, clockSize, clockSize);
+        return withClockView(context, appWidgetId, clockSize, clockView -> renderAppWidget(context, clockView, appWidgetId, rect, partial));
+    }
+
+    /**
+     * Runs the task with the widget's clock view, bound to the widget and locked. Returns null if
+     * there's no clock to draw.
+     */
+    @Nullable
+    private <T> T withClockView(Context context, int appWidgetId, int clockSize, ClockViewTask<T> task) {
+        // Create a clock view, reusing the one already laid out for this size if possible. Cached
+        // views outlive this broadcast, so they're built from the application context.
+        ClockViewKey key = new ClockViewKey(getClass(), clockSize, context.getResources().getConfiguration());
+        ClockView convertView;
+        synchronized (sClockViews) {
+            convertView = sClockViews.get(key);
+        }
+
+        // Views are shared by every widget of the same size, which may be updating on another
+        // thread. Rebinding changes the view, so it's done under the view's lock too.
+        Object convertViewLock = convertView == null ? new Object() : convertView;
+        synchronized (convertViewLock) {
+            ClockView clockView = onCreateClockView(context.getApplicationContext(), convertView, appWidgetId);
+            if (clockView == null) {
+                Log.w(TAG(appWidgetId), "Ignoring widget. No clock provided.");
+                return null;
+            }
+
+            // A new view can't be seen by other threads until it's cached, and we lock it first.
+            synchronized (clockView) {
+                synchronized (sClockViews) {
+                    sClockViews.put(key, clockView);
+                }
+                return task.run(clockView);
+            }
+        }
+    }
+
+    /** Draws the widget with the given view, which the caller holds the lock of. */
+    private RenderedWidget renderAppWidget(Context context, ClockView clockView, int appWidgetId, Rect rect, boolean partial) {
+        int clockSize = rect.width();
+        RemoteViews remoteViews = null;
+        Bitmap bitmap = null;
+
+        if (getWidgetMode(context) == WidgetMode.SYSTEM_CLOCK) {
+            // The launcher ticks system clocks itself, so they keep the clock's seconds.
+            clockView.onTimeTick();
+            if (clockView.getWidth() != clockSize || clockView.getHeight() != clockSize || clockView.isLayoutRequested()) {
+                BitmapUtils.measure(clockView, rect);
+            }
+            remoteViews = createSystemClockViews(context, clockView, clockSize);
+            if (remoteViews == null) {
+                Log.w(TAG(appWidgetId), "Unable to draw the clock as a system clock. Falling back to a bitmap.");
+                // onEnabled didn't schedule any ticks for a system clock, so fall back to a
+                // repeating alarm if exact alarms aren't allowed.
+                scheduleClockTick(context, true);
+            }
+        }
+
+        if (remoteViews == null) {
+            // Bitmaps are only drawn once a minute.
+            clockView.setSecondsEnabled(false);
+            clockView.setMillisecondsEnabled(false);
 
-        // Invalidate the clock (requires being measured first)
-        mClockView.onTimeTick();
+            // Invalidate the clock (requires being measured first)
+            clockView.onTimeTick();
 
-        // Draw the view onto the widget
-        RemoteViews remoteViews = new RemoteViews(context.getPackageName(), R.layout.clock_widget);
-        remoteViews.setImageViewBitmap(R.id.content, BitmapUtils.draw(mClockView, rect));
+            // The bitmap is pooled. Once the RemoteViews are sent, the next update can draw into it again.
+            BitmapPool.registerComponentCallbacks(context);
+            bitmap = obtainBitmap(context, clockView, clockSize);
+
+            int renderAheadMinutes = getRenderAheadMinutes(context);
+            if (renderAheadMinutes > 1) {
+                drawAhead(context, clockView, appWidgetId, rect, bitmap, renderAheadMinutes);
+            } else {
+                drawFrame(clockView, new Canvas(bitmap), rect, bitmap);
+            }
+            remoteViews = new RemoteViews(context.getPackageName(), R.layout.clock_widget);
+            remoteViews.setImageViewBitmap(R.id.content, bitmap);
+        }
+
+        // The launcher merges partial updates into the views it already has, so the click intent is kept.
+        if (partial && bitmap != null && getPushedLayout(appWidgetId) == R.layout.clock_widget) {
+            return new RenderedWidget(appWidgetId, remoteViews, bitmap, true);
+        }
 
         // Launch a config activity when tapped (if set up)
         Intent configIntent = getConfigurationIntent(context);
@@ -113,16 +413,296 @@ public abstract class ClockWidget extends AppWidgetProvider {
             remoteViews.setOnClickPendingIntent(R.id.content, PendingIntent.getActivity(context, appWidgetId, configIntent, flags));
         }
 
+        return new RenderedWidget(appWidgetId, remoteViews, bitmap, false);
+    }
+
+    /**
+     * Returns a pooled bitmap for a widget of the given size. Clocks with an opaque background are
+     * drawn without alpha, at half the bytes. If the widget is larger than
+     * {@link #getMaxBitmapBytes}, the bitmap is scaled down to fit.
+     */
+    private Bitmap obtainBitmap(Context context, ClockView clockView, int clockSize) {
+        Bitmap.Config config = isOpaque(clockView) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        int bytesPerPixel = config == Bitmap.Config.RGB_565 ? 2 : 4;
+        long byteCount = (long) clockSize * clockSize * bytesPerPixel;
+        int maxBitmapBytes = getMaxBitmapBytes(context);
+
+        int bitmapSize = clockSize;
+        if (maxBitmapBytes > 0 && byteCount > maxBitmapBytes) {
+            bitmapSize = Math.max(1, (int) (clockSize * Math.sqrt((double) maxBitmapBytes / byteCount)));
+        }
+        return BitmapPool.obtain(bitmapSize, bitmapSize, config);
+    }
+
+    private static boolean isOpaque(ClockView clockView) {
+        Drawable background = clockView.getBackground();
+        return background != null && background.getOpacity() == PixelFormat.OPAQUE && clockView.getAlpha() == 1f;
+    }
+
+    /**
+     * Draws the clock, laid out at the size of {@code rect}, scaled to fill the bitmap. Views of the
+     * same size were already laid out, so a tick that doesn't change the size of the time is laid
+     * out locally.
+     */
+    private static void drawFrame(ClockView clockView, Canvas canvas, Rect rect, Bitmap bitmap) {
+        int saveCount = canvas.save();
+        canvas.scale((float) bitmap.getWidth() / rect.width(), (float) bitmap.getHeight() / rect.height());
+        BitmapUtils.draw(clockView, canvas, rect, false, true);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Translates the clock into a TextClock or AnalogClock, which the launcher updates by itself.
+     * Returns null if the clock can't be translated.
+     */
+    @Nullable
+    private static RemoteViews createSystemClockViews(Context context, ClockView clockView, int clockSize) {
+        if (clockView.isDigitalEnabled()) {
+            TextView timeView = clockView.findViewById(R.id.clock_time);
+            if (timeView == null) {
+                return null;
+            }
+
+            // Matches ClockView's format, besides milliseconds, which no widget can tick for.
+            // TextClock picks 12 or 24 hours the same way ClockView does.
+            String seconds = clockView.isSecondsEnabled() ? ":ss" : "";
+            RemoteViews remoteViews = new RemoteViews(context.getPackageName(), R.layout.clock_widget_text_clock);
+            remoteViews.setCharSequence(R.id.content, "setFormat12Hour", "hh:mm" + seconds);
+            remoteViews.setCharSequence(R.id.content, "setFormat24Hour", "HH:mm" + seconds);
+            remoteViews.setTextColor(R.id.content, timeView.getCurrentTextColor());
+            remoteViews.setTextViewTextSize(R.id.content, TypedValue.COMPLEX_UNIT_PX, timeView.getTextSize());
+            return remoteViews;
+        }
+
+        // AnalogClock only accepts custom hands as of Android 12.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return null;
+        }
+
+        ImageView hours = clockView.findViewById(R.id.clock_hours);
+        ImageView minutes = clockView.findViewById(R.id.clock_minutes);
+        if (hours == null || hours.getDrawable() == null || minutes == null || minutes.getDrawable() == null) {
+            return null;
+        }
+
+        // The hands are sent at the size they're drawn at. After that, the launcher rotates them.
+        // They're rasterized once and cached, as every update sends them again.
+        RemoteViews remoteViews = new RemoteViews(context.getPackageName(), R.layout.clock_widget_analog_clock);
+        Drawable dial = clockView.getBackground();
+        remoteViews.setIcon(R.id.content, "setDial", Icon.createWithBitmap(dial == null
+                ? ResourceBitmapCache.get(context, EMPTY_DIAL, clockSize, clockSize, Bitmap.Config.ALPHA_8, false)
+                : asBitmap(context, dial, clockSize, clockSize)));
+        remoteViews.setIcon(R.id.content, "setHourHand", Icon.createWithBitmap(
+                asBitmap(context, hours.getDrawable(), hours.getWidth(), hours.getHeight())));
+        remoteViews.setIcon(R.id.content, "setMinuteHand", Icon.createWithBitmap(
+                asBitmap(context, minutes.getDrawable(), minutes.getWidth(), minutes.getHeight())));
+        return remoteViews;
+    }
+
+    private static Bitmap asBitmap(Context context, Drawable drawable, int width, int height) {
+        return ResourceBitmapCache.get(context, drawable, Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888, false);
+    }
+
+    /**
+     * Returns everything, besides the time, that a frame rendered ahead depends on. The values are
+     * kept as they are, instead of being hashed, so that two different states can't collide.
+     */
+    private String createRenderAheadKey(Context context, ClockView clockView, int width, int height, Bitmap.Config config, int appWidgetId) {
+        return width + "x" + height
+                + "|" + config
+                + "|" + TimeZone.getDefault().getID()
+                + "|" + (DateFormat.is24HourFormat(context) ? "24h" : "12h")
+                + "|" + clockView.isDigitalEnabled()
+                + "|" + clockView.getDigitalTimeMode()
+                + "|" + context.getResources().getConfiguration()
+                + "|" + getRenderAheadKey(context, appWidgetId);
+    }
+
+    /**
+     * Draws the current minute into {@code bitmap}. The frame is loaded from the render ahead cache
+     * if possible. Otherwise, it's drawn now, and the next {@code minutes} frames are rendered in
+     * one batch once this update is done. Updates may run on the main thread (eg. onUpdate), so
+     * they never wait on a batch.
+     */
+    private void drawAhead(Context context, ClockView clockView, int appWidgetId, Rect rect, Bitmap bitmap, int minutes) {
+        Context applicationContext = context.getApplicationContext();
+        String key = createRenderAheadKey(applicationContext, clockView, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), appWidgetId);
+        long currentMinute = System.currentTimeMillis() / MINUTE_MILLIS;
+        if (new WidgetFrameCache(context, appWidgetId).load(currentMinute, key, bitmap)) {
+            return;
+        }
+
+        drawFrame(clockView, new Canvas(bitmap), rect, bitmap);
+        scheduleRenderAhead(applicationContext, appWidgetId, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), minutes);
+    }
+
+    /**
+     * Renders the widget's next {@code minutes} frames on the batch executor, after the updates
+     * already queued there. A widget is only queued once, and is dropped if it's deleted first.
+     */
+    private void scheduleRenderAhead(Context applicationContext, int appWidgetId, int width, int height, Bitmap.Config config, int minutes) {
+        synchronized (sRenderAheadWidgets) {
+            if (!sRenderAheadWidgets.add(appWidgetId)) {
+                return;
+            }
+        }
+
+        sBatchExecutor.execute(() -> {
+            synchronized (sRenderAheadWidgets) {
+                if (!sRenderAheadWidgets.remove(appWidgetId)) {
+                    return;
+                }
+            }
+
+            int clockSize = getWidgetSize(applicationContext, appWidgetId);
+            Rect rect = new Rect(0, 0, clockSize, clockSize);
+            withClockView(applicationContext, appWidgetId, clockSize, clockView -> {
+                renderAhead(applicationContext, clockView, appWidgetId, rect, width, height, config, minutes);
+                return null;
+            });
+        });
+    }
+
+    /**
+     * Renders the next {@code minutes} frames, starting with the current minute, into the render
+     * ahead cache. The view's state is read now, so the frames are keyed on the state they were
+     * drawn with.
+     */
+    private void renderAhead(Context context, ClockView clockView, int appWidgetId, Rect rect, int width, int height, Bitmap.Config config, int minutes) {
+        String key = createRenderAheadKey(context, clockView, width, height, config, appWidgetId);
+        long currentMinute = System.currentTimeMillis() / MINUTE_MILLIS;
+
+        long drawNanos = 0;
+        long compressNanos = 0;
+        List<byte[]> frames = new ArrayList<>(minutes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Bitmap scratch = BitmapPool.obtain(width, height, config);
+        Canvas canvas = new Canvas(scratch);
+        try {
+            for (int i = 0; i < minutes; i++) {
+                long startTime = SystemClock.elapsedRealtimeNanos();
+                scratch.eraseColor(Color.TRANSPARENT);
+                clockView.setTime((currentMinute + i) * MINUTE_MILLIS);
+                clockView.onTimeTick();
+                drawFrame(clockView, canvas, rect, scratch);
+                long drawnTime = SystemClock.elapsedRealtimeNanos();
+                drawNanos += drawnTime - startTime;
+
+                out.reset();
+                compressFrame(scratch, out);
+                frames.add(out.toByteArray());
+                compressNanos += SystemClock.elapsedRealtimeNanos() - drawnTime;
+            }
+        } finally {
+            canvas.setBitmap(null);
+            BitmapPool.recycle(scratch);
+            clockView.resetTime();
+            clockView.onTimeTick();
+        }
+
+        new WidgetFrameCache(context, appWidgetId).write(currentMinute, key, frames);
         if (DEBUG) {
-            Log.v(TAG(appWidgetId), "Updating the widget ui");
+            // Compressing a frame (and decoding it later) should cost less than drawing it, or
+            // rendering ahead isn't worth it for this clock.
+            Log.v(TAG(appWidgetId), String.format(Locale.US, "Rendered %d frames. Drawing took %dus per frame, compressing took %dus per frame",
+                    minutes, drawNanos / minutes / 1000, compressNanos / minutes / 1000));
+        }
+    }
+
+    /**
+     * Compresses a frame for the render ahead cache. Frames are lossless, as they're shown as is,
+     * but compressed with the least effort. PNG's zlib compression at full quality can cost more
+     * than drawing the clock again.
+     */
+    private static void compressFrame(Bitmap frame, ByteArrayOutputStream out) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // For lossless WebP, quality is how much effort goes into compression. 0 is the fastest.
+            frame.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 0, out);
+        } else {
+            frame.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+    }
+
+    /** Sends a rendered widget to the launcher. Returns the number of bitmap bytes sent. */
+    private long pushAppWidget(AppWidgetManager appWidgetManager, RenderedWidget renderedWidget) {
+        int appWidgetId = renderedWidget.mAppWidgetId;
+        long bytes = renderedWidget.mBitmap == null ? 0 : renderedWidget.mBitmap.getByteCount();
+        if (DEBUG) {
+            Log.v(TAG(appWidgetId), String.format(Locale.US, "Updating the widget ui (%s, %d bytes)",
+                    renderedWidget.mPartial ? "partial" : "full", bytes));
         }
         try {
-            appWidgetManager.updateAppWidget(appWidgetId, remoteViews);
+            if (renderedWidget.mPartial) {
+                appWidgetManager.partiallyUpdateAppWidget(appWidgetId, renderedWidget.mRemoteViews);
+            } else {
+                appWidgetManager.updateAppWidget(appWidgetId, renderedWidget.mRemoteViews);
+                setPushedLayout(appWidgetId, renderedWidget.mRemoteViews.getLayoutId());
+            }
+            sBytesSent.addAndGet(bytes);
+            return bytes;
         } catch (Exception e) {
             Log.e(TAG(appWidgetId), "Error updating ui!", e);
+            // We no longer know what the launcher has. Send everything next time.
+            setPushedLayout(appWidgetId, 0);
+            return 0;
+        } finally {
+            BitmapPool.recycle(renderedWidget.mBitmap);
+        }
+    }
+
+    private static int getPushedLayout(int appWidgetId) {
+        synchronized (sPushedLayouts) {
+            Integer layout = sPushedLayouts.get(appWidgetId);
+            return layout == null ? 0 : layout;
+        }
+    }
+
+    private static void setPushedLayout(int appWidgetId, int layout) {
+        synchronized (sPushedLayouts) {
+            if (layout == 0) {
+                sPushedLayouts.remove(appWidgetId);
+            } else {
+                sPushedLayouts.put(appWidgetId, layout);
+            }
         }
     }
 
+    /** Returns the number of bitmap bytes sent to the launcher since the process started. */
+    static long getBytesSent() {
+        return sBytesSent.get();
+    }
+
+    /**
+     * Schedules the next tick for the start of the next minute. If exact alarms aren't allowed,
+     * and {@code repeatingFallback} is set, ticks are scheduled as an inexact repeating alarm
+     * instead. Otherwise, the repeating alarm set when the first widget was added keeps ticking.
+     */
+    private void scheduleClockTick(Context context, boolean repeatingFallback) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent intent = createClockTickIntent(context);
+        long nextMinute = getNextMinuteMillis(System.currentTimeMillis());
+        long windowMillis = getUpdateWindowMillis(context);
+        if (windowMillis > 0 && (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || windowMillis >= MIN_PLATFORM_WINDOW_MILLIS)) {
+            // Inexact alarms don't need the exact alarm permission.
+            alarmManager.setWindow(AlarmManager.RTC, nextMinute, windowMillis, intent);
+            return;
+        }
+
+        try {
+            alarmManager.setExact(AlarmManager.RTC, nextMinute, intent);
+        } catch (SecurityException e) {
+            // Android 14+ exact alarm permission missing
+            if (repeatingFallback) {
+                alarmManager.setRepeating(AlarmManager.RTC, nextMinute, MINUTE_MILLIS, intent);
+            }
+        }
+    }
+
+    /** Returns the start of the minute following {@code timeMillis}. */
+    static long getNextMinuteMillis(long timeMillis) {
+        return (timeMillis / MINUTE_MILLIS + 1) * MINUTE_MILLIS;
+    }
+
     private PendingIntent createClockTickIntent(Context context) {
         Intent intent = new Intent(ACTION_CLOCK_WIDGET_UPDATE);
         intent.setPackage(context.getPackageName());
@@ -133,22 +713,33 @@ public abstract class ClockWidget extends AppWidgetProvider {
     @Override
     public void onEnabled(Context context) {
         super.onEnabled(context);
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            try {
-                alarmManager.setExact(AlarmManager.RTC, System.currentTimeMillis() + 60 * 1000, createClockTickIntent(context));
-            } catch (SecurityException e) {
-                alarmManager.setRepeating(AlarmManager.RTC, System.currentTimeMillis(), 60 * 1000, createClockTickIntent(context));
+        if (getWidgetMode(context) == WidgetMode.SYSTEM_CLOCK) {
+            // System clocks don't need to be ticked. Widgets that fall back to a bitmap schedule ticks when they're drawn.
+            return;
+        }
+        scheduleClockTick(context, true);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        super.onDeleted(context, appWidgetIds);
+        synchronized (sRenderAheadWidgets) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderAheadWidgets.remove(appWidgetId);
             }
-        } else {
-            alarmManager.setRepeating(AlarmManager.RTC, System.currentTimeMillis(), 60 * 1000, createClockTickIntent(context));
         }
+        for (int appWidgetId : appWidgetIds) {
+            new WidgetFrameCache(context, appWidgetId).delete();
+            setPushedLayout(appWidgetId, 0);
+        }
+        removeWidgetSizes(context, appWidgetIds);
     }
 
     @Override
     public void onDisabled(Context context) {
         AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         alarmManager.cancel(createClockTickIntent(context));
+        clearClockViewCache();
         super.onDisabled(context);
     }
 
@@ -156,7 +747,7 @@ public abstract class ClockWidget extends AppWidgetProvider {
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager, int appWidgetId, Bundle newOptions) {
         super.onAppWidgetOptionsChanged(context, appWidgetManager, appWidgetId, newOptions);
         setWidgetSize(context, appWidgetId, newOptions);
-        updateAppWidget(context, appWidgetManager, appWidgetId);
+        updateAppWidget(context, appWidgetManager, appWidgetId, false);
     }
 
     protected void setWidgetSize(Context context, int appWidgetId, Bundle bundle) {
@@ -167,16 +758,121 @@ public abstract class ClockWidget extends AppWidgetProvider {
             int maxHeight = bundle.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT);
             int min = MathUtils.min(minWidth, maxWidth, minHeight, maxHeight);
             int pixels = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, min, context.getResources().getDisplayMetrics());
+            synchronized (sWidgetSizes) {
+                sWidgetSizes.put(appWidgetId, pixels);
+            }
+            // apply() writes to disk in the background.
             getSharedPreferences(context).edit().putInt(PREFERENCE_WIDGET_SIZE_PREAMBLE + appWidgetId, pixels).apply();
         }
     }
 
     protected int getWidgetSize(Context context, int appWidgetId) {
-        return getSharedPreferences(context).getInt(PREFERENCE_WIDGET_SIZE_PREAMBLE + appWidgetId,
-                context.getResources().getDimensionPixelSize(R.dimen.default_clock_size));
+        int size;
+        synchronized (sWidgetSizes) {
+            size = sWidgetSizes.get(appWidgetId, 0);
+            if (size == 0) {
+                // First lookup since the process started. Read it from disk once.
+                size = getSharedPreferences(context).getInt(PREFERENCE_WIDGET_SIZE_PREAMBLE + appWidgetId, NO_WIDGET_SIZE);
+                sWidgetSizes.put(appWidgetId, size);
+            }
+        }
+        return size == NO_WIDGET_SIZE ? context.getResources().getDimensionPixelSize(R.dimen.default_clock_size) : size;
+    }
+
+    private void removeWidgetSizes(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor = getSharedPreferences(context).edit();
+        synchronized (sWidgetSizes) {
+            for (int appWidgetId : appWidgetIds) {
+                sWidgetSizes.delete(appWidgetId);
+                editor.remove(PREFERENCE_WIDGET_SIZE_PREAMBLE + appWidgetId);
+            }
+        }
+        editor.apply();
+    }
+
+    /** Drops every widget size read from the shared preferences. They're read again on the next lookup. */
+    static void clearWidgetSizeCache() {
+        synchronized (sWidgetSizes) {
+            sWidgetSizes.clear();
+        }
     }
 
     protected SharedPreferences getSharedPreferences(Context context) {
         return context.getSharedPreferences(TAG, Context.MODE_PRIVATE);
     }
+
+    /** Drops every cached clock view. */
+    static void clearClockViewCache() {
+        synchronized (sClockViews) {
+            sClockViews.clear();
+        }
+    }
+
+    /** Waits for every batch queued so far, including frames being rendered ahead, to finish. */
+    static void awaitBatches() throws ExecutionException, InterruptedException {
+        sBatchExecutor.submit(() -> {}).get();
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Widgets update once a minute. Don't hold on to idle threads in between.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private interface ClockViewTask<T> {
+        T run(ClockView clockView);
+    }
+
+    private static final class RenderedWidget {
+        private final int mAppWidgetId;
+        private final RemoteViews mRemoteViews;
+        // Null for system clocks.
+        @Nullable private final Bitmap mBitmap;
+        // True if only the bitmap changed, and the views should be merged into the launcher's.
+        private final boolean mPartial;
+
+        RenderedWidget(int appWidgetId, RemoteViews remoteViews, @Nullable Bitmap bitmap, boolean partial) {
+            mAppWidgetId = appWidgetId;
+            mRemoteViews = remoteViews;
+            mBitmap = bitmap;
+            mPartial = partial;
+        }
+    }
+
+    private static final class ClockViewKey {
+        private final Class<?> mWidgetClass;
+        private final int mSize;
+        private final Configuration mConfiguration;
+
+        ClockViewKey(Class<?> widgetClass, int size, Configuration configuration) {
+            mWidgetClass = widgetClass;
+            mSize = size;
+            mConfiguration = new Configuration(configuration);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (!(o instanceof ClockViewKey)) {
+                return false;
+            }
+            ClockViewKey key = (ClockViewKey) o;
+            return mWidgetClass == key.mWidgetClass
+                    && mSize == key.mSize
+                    && mConfiguration.equals(key.mConfiguration);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mWidgetClass.hashCode();
+            result = 31 * result + mSize;
+            result = 31 * result + mConfiguration.hashCode();
+            return result;
+        }
+    }
 }
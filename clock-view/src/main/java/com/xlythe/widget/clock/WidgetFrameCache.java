@@ -0,0 +1,151 @@
+package com.xlythe.widget.clock;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Widget frames rendered ahead of time, stored as one file per widget in the cache directory.
+ *
+ * The file holds a header, an index of (offset, length) pairs and then one compressed frame per
+ * minute. It's memory mapped when read, so loading a frame only touches the pages of that frame.
+ *
+ * The header holds the key the frames were rendered for (size, configuration, time zone, settings)
+ * in full, rather than a hash of it, so that frames are never loaded for a different key.
+ */
+final class WidgetFrameCache {
+    private static final String TAG = WidgetFrameCache.class.getSimpleName();
+    private static final String DIRECTORY = "clock_widget_frames";
+    private static final int MAGIC = 0x434c4b46; // "CLKF"
+    private static final int VERSION = 2;
+    // magic, version, key length (followed by the key), first minute, frame count
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4;
+    // offset, length
+    private static final int INDEX_ENTRY_SIZE = 4 + 4;
+
+    private final File mFile;
+
+    WidgetFrameCache(Context context, int appWidgetId) {
+        mFile = new File(new File(context.getCacheDir(), DIRECTORY), Integer.toString(appWidgetId));
+    }
+
+    /**
+     * Decodes the frame for the given minute (minutes since the epoch) into {@code target}, which
+     * must be mutable and the size of the frame. Returns false if there's no matching frame.
+     */
+    boolean load(long minute, String key, Bitmap target) {
+        if (!mFile.exists()) {
+            return false;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                return false;
+            }
+
+            byte[] expectedKey = key.getBytes(StandardCharsets.UTF_8);
+            int keyLength = buffer.getInt();
+            if (keyLength != expectedKey.length) {
+                return false;
+            }
+            byte[] actualKey = new byte[keyLength];
+            buffer.get(actualKey);
+            if (!Arrays.equals(expectedKey, actualKey)) {
+                return false;
+            }
+
+            long firstMinute = buffer.getLong();
+            int count = buffer.getInt();
+            long index = minute - firstMinute;
+            if (index < 0 || index >= count) {
+                return false;
+            }
+
+            buffer.position(HEADER_SIZE + keyLength + (int) index * INDEX_ENTRY_SIZE);
+            int offset = buffer.getInt();
+            int length = buffer.getInt();
+            byte[] bytes = new byte[length];
+            buffer.position(offset);
+            buffer.get(bytes);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inMutable = true;
+            options.inBitmap = target;
+            options.inPreferredConfig = target.getConfig();
+            return BitmapFactory.decodeByteArray(bytes, 0, length, options) == target;
+        } catch (IOException | RuntimeException e) {
+            // A corrupt or truncated file. It'll be overwritten by the next batch.
+            Log.w(TAG, "Failed to load frame " + minute + " from " + mFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the cache with the given compressed frames, the first of which is for
+     * {@code firstMinute}.
+     */
+    void write(long firstMinute, String key, List<byte[]> frames) {
+        File directory = mFile.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int dataOffset = HEADER_SIZE + keyBytes.length + frames.size() * INDEX_ENTRY_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(dataOffset);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(keyBytes.length);
+        header.put(keyBytes);
+        header.putLong(firstMinute);
+        header.putInt(frames.size());
+        int offset = dataOffset;
+        for (byte[] frame : frames) {
+            header.putInt(offset);
+            header.putInt(frame.length);
+            offset += frame.length;
+        }
+
+        // Write to a temporary file first, so that a reader never sees a half written cache.
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(header.array());
+            for (byte[] frame : frames) {
+                out.write(frame);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + tmp, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(mFile)) {
+            Log.w(TAG, "Failed to move " + tmp + " to " + mFile);
+            tmp.delete();
+        }
+    }
+
+    void delete() {
+        mFile.delete();
+    }
+
+    boolean exists() {
+        return mFile.exists();
+    }
+}
@@ -286,4 +286,100 @@ public class AutoResizeTextViewTest {
         mTextView.resetMaxTextSizeWithoutLayout();
         assertEquals(0f, mTextView.getMaxTextSize(), 0.01f);
     }
+
+    private static class CountingAutoResizeTextView extends MockAutoResizeTextView {
+        int measurements;
+
+        CountingAutoResizeTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected int getTextHeight(CharSequence source, TextPaint paint, int width, float textSize) {
+            measurements++;
+            return super.getTextHeight(source, paint, width, textSize);
+        }
+    }
+
+    @Test
+    public void testResizeTextUsesBinarySearch() {
+        CountingAutoResizeTextView textView = new CountingAutoResizeTextView(mContext);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 10f);
+        textView.setText("12:34");
+        textView.setLayoutParams(new ViewGroup.LayoutParams(300, 300));
+        textView.resizeText(300, 300);
+
+        // Growing from 10px toward 1000px in 2px steps took ~50 measurements.
+        assertTrue("Expected a binary search, but measured " + textView.measurements + " times", textView.measurements <= 16);
+
+        // At 150px, the mock wraps the 5 chars onto 2 lines of 150px each, which exactly fills 300px.
+        assertEquals(150f, textView.getTextSize(), 1f);
+    }
+
+    @Test
+    public void testResizeTextCachesFittedSizeForSameShape() {
+        CountingAutoResizeTextView textView = new CountingAutoResizeTextView(mContext);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 10f);
+        textView.setLayoutParams(new ViewGroup.LayoutParams(300, 300));
+        textView.setFontFeatureSettings("tnum");
+
+        textView.setText("12:34");
+        textView.resizeText(300, 300);
+        float fittedSize = textView.getTextSize();
+
+        // Tabular digits keep the same shape, so they're never fit again.
+        textView.measurements = 0;
+        textView.setText("12:35");
+        textView.resizeText(300, 300);
+        assertEquals(0, textView.measurements);
+        assertEquals(fittedSize, textView.getTextSize(), 0.01f);
+
+        // A different shape (or size) is fit again.
+        textView.setText("1:35");
+        textView.resizeText(300, 300);
+        assertTrue(textView.measurements > 0);
+
+        textView.measurements = 0;
+        textView.setText("12:36");
+        textView.resizeText(200, 300);
+        assertTrue(textView.measurements > 0);
+    }
+
+    @Test
+    public void testResizeTextRefitsProportionalDigits() {
+        CountingAutoResizeTextView textView = new CountingAutoResizeTextView(mContext);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 10f);
+        textView.setLayoutParams(new ViewGroup.LayoutParams(300, 300));
+
+        textView.setText("12:34");
+        textView.resizeText(300, 300);
+
+        // Without tabular digits, a 1 may be narrower than a 4.
+        textView.measurements = 0;
+        textView.setText("12:31");
+        textView.resizeText(300, 300);
+        assertTrue(textView.measurements > 0);
+
+        // Letter spacing changes the width of the text.
+        textView.setFontFeatureSettings("tnum");
+        textView.resizeText(300, 300);
+        textView.measurements = 0;
+        textView.setLetterSpacing(0.1f);
+        textView.resizeText(300, 300);
+        assertTrue(textView.measurements > 0);
+    }
+
+    @Test
+    public void testSetMinTextSizeClearsFittedSizes() {
+        CountingAutoResizeTextView textView = new CountingAutoResizeTextView(mContext);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 10f);
+        textView.setLayoutParams(new ViewGroup.LayoutParams(300, 300));
+        textView.setText("12:34");
+        textView.resizeText(300, 300);
+
+        textView.measurements = 0;
+        textView.setMinTextSize(5f);
+        textView.resizeText(300, 300);
+        assertTrue(textView.measurements > 0);
+    }
 }
@@ -3,6 +3,8 @@ package com.xlythe.view.clock;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
@@ -13,16 +15,21 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.annotation.Config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyFloat;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(AndroidJUnit4.class)
@@ -89,10 +96,48 @@ public class ChartDrawableTest {
         Canvas mockCanvas = mock(Canvas.class);
         drawable.draw(mockCanvas);
 
-        verify(mockCanvas, atLeastOnce()).drawArc(any(), anyFloat(), anyFloat(), anyBoolean(), any());
+        verify(mockCanvas, atLeastOnce()).drawPath(any(Path.class), any(Paint.class));
         verify(mSampleIcon, atLeastOnce()).draw(mockCanvas);
     }
 
+    @Test
+    public void testDrawUsesPrecomputedPaths() {
+        ChartDrawable drawable = new ChartDrawable.Builder(mContext)
+                .backgroundColor(Color.BLACK)
+                .addElement(10f, Color.RED)
+                .addElement(20f, Color.GREEN)
+                .addElement(30f, Color.BLUE)
+                .build();
+
+        drawable.setBounds(0, 0, 200, 200);
+
+        Canvas mockCanvas = mock(Canvas.class);
+        drawable.draw(mockCanvas);
+
+        // One fill per element, plus a single merged outline.
+        verify(mockCanvas, times(4)).drawPath(any(Path.class), any(Paint.class));
+        verify(mockCanvas, never()).drawArc(any(), anyFloat(), anyFloat(), anyBoolean(), any());
+    }
+
+    @Test
+    public void testDrawSingleElementFillsChart() {
+        ChartDrawable drawable = new ChartDrawable.Builder(mContext)
+                .backgroundColor(Color.BLACK)
+                .addElement(10f, Color.RED)
+                .addElement(0f, Color.GREEN)
+                .build();
+
+        drawable.setBounds(0, 0, 200, 200);
+
+        ArgumentCaptor<Path> pathCaptor = ArgumentCaptor.forClass(Path.class);
+        Canvas mockCanvas = mock(Canvas.class);
+        drawable.draw(mockCanvas);
+
+        verify(mockCanvas, times(3)).drawPath(pathCaptor.capture(), any(Paint.class));
+        assertFalse(pathCaptor.getAllValues().get(0).isEmpty());
+        assertTrue(pathCaptor.getAllValues().get(1).isEmpty());
+    }
+
     @Test
     public void testDrawZeroWeightSum() {
         ChartDrawable drawable = new ChartDrawable.Builder(mContext)
@@ -103,5 +148,7 @@ public class ChartDrawableTest {
 
         Canvas mockCanvas = mock(Canvas.class);
         drawable.draw(mockCanvas);
+
+        verify(mockCanvas, never()).drawPath(any(Path.class), any(Paint.class));
     }
 }
@@ -5,6 +5,7 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
@@ -24,8 +25,10 @@ import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
@@ -302,4 +305,58 @@ public class CircularImageViewTest {
         assertEquals(-50.0f, transX, 0.01f);
         assertEquals(0.0f, transY, 0.01f);
     }
+
+    @Test
+    public void testClipRenderModeDrawsDrawableDirectly() {
+        Drawable drawable = spy(new ColorDrawable(Color.RED));
+        mCircularImageView.setRenderMode(CircularImageView.RenderMode.CLIP);
+        mCircularImageView.setImageDrawable(drawable);
+        mCircularImageView.layout(0, 0, 100, 100);
+
+        Canvas mockCanvas = mock(Canvas.class);
+        mCircularImageView.onDraw(mockCanvas);
+        verify(mockCanvas).clipPath(any(Path.class));
+        verify(drawable).draw(mockCanvas);
+        verify(mockCanvas, never()).drawCircle(any(Float.class), any(Float.class), any(Float.class), any(Paint.class));
+    }
+
+    @Test
+    public void testClipRenderModeAnimatorDoesNotRasterize() {
+        CircularImageView spyView = spy(mCircularImageView);
+        spyView.setRenderMode(CircularImageView.RenderMode.CLIP);
+
+        AnimatorDrawable animatorDrawable = new AnimatorDrawable();
+        spyView.layout(0, 0, 100, 100);
+        spyView.setImageDrawable(animatorDrawable);
+        animatorDrawable.listener.onInvalidate();
+
+        verify(spyView, never()).drawableToBitmap(any());
+        verify(spyView, atLeastOnce()).invalidate();
+    }
+
+    @Test
+    public void testClipRenderModeClipsToOutline() {
+        assertEquals(CircularImageView.RenderMode.BITMAP_SHADER, mCircularImageView.getRenderMode());
+        assertFalse(mCircularImageView.getClipToOutline());
+
+        mCircularImageView.setRenderMode(CircularImageView.RenderMode.CLIP);
+        assertTrue(mCircularImageView.getClipToOutline());
+
+        mCircularImageView.setCircularEnabled(false);
+        assertFalse(mCircularImageView.getClipToOutline());
+
+        mCircularImageView.setCircularEnabled(true);
+        mCircularImageView.setRenderMode(CircularImageView.RenderMode.BITMAP_SHADER);
+        assertFalse(mCircularImageView.getClipToOutline());
+    }
+
+    @Test
+    public void testSaveAndRestoreRenderMode() {
+        mCircularImageView.setRenderMode(CircularImageView.RenderMode.CLIP);
+        Parcelable state = mCircularImageView.onSaveInstanceState();
+
+        CircularImageView restoredView = new CircularImageView(mContext);
+        restoredView.onRestoreInstanceState(state);
+        assertEquals(CircularImageView.RenderMode.CLIP, restoredView.getRenderMode());
+    }
 }
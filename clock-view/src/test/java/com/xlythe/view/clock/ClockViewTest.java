@@ -2,6 +2,9 @@ package com.xlythe.view.clock;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
@@ -31,9 +34,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @RunWith(AndroidJUnit4.class)
 @Config(sdk = 34)
@@ -256,6 +262,102 @@ public class ClockViewTest {
         assertEquals(181.5f, mMinutesView.getRotation(), 0.001f);
     }
 
+    @Test
+    public void testFixedAdvanceDigitalTimeMode() {
+        assertEquals(ClockView.DigitalTimeMode.TEXT_VIEW, mClockView.getDigitalTimeMode());
+        assertNull(mClockView.getTimeDrawable());
+
+        mClockView.setDigitalEnabled(true);
+        mClockView.setSecondsEnabled(true);
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.FIXED_ADVANCE);
+        FixedAdvanceTimeDrawable timeDrawable = mClockView.getTimeDrawable();
+        assertNotNull(timeDrawable);
+
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:15:30+00:00[UTC]"));
+        mClockView.onTimeTick();
+        CharSequence laidOutText = mTimeView.getText();
+        assertEquals(laidOutText.length(), timeDrawable.getText().length());
+        CharSequence description = mTimeView.getContentDescription();
+        assertTrue(description.toString().contains("10:15"));
+
+        mClockView.layout(0, 0, 400, 400);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888));
+        mClockView.draw(canvas);
+        int layoutCount = timeDrawable.getLayoutCount();
+
+        // Ticking only updates the drawable. The TextView isn't touched, so nothing is laid out.
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:15:31+00:00[UTC]"));
+        mClockView.onTimeTick();
+        mClockView.draw(canvas);
+        assertEquals(laidOutText, mTimeView.getText());
+        assertTrue(timeDrawable.getText().toString().endsWith("31"));
+        assertEquals(layoutCount, timeDrawable.getLayoutCount());
+
+        // Accessibility services read the time to the minute, so it's only set once a minute.
+        assertSame(description, mTimeView.getContentDescription());
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:16:00+00:00[UTC]"));
+        mClockView.onTimeTick();
+        assertTrue(mTimeView.getContentDescription().toString().contains("10:16"));
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:15:31+00:00[UTC]"));
+        mClockView.onTimeTick();
+
+        // Going back to the TextView sets the text every tick again.
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.TEXT_VIEW);
+        assertNull(mClockView.getTimeDrawable());
+        assertTrue(mTimeView.getText().toString().endsWith("31"));
+        assertNull(mTimeView.getContentDescription());
+    }
+
+    @Test
+    public void testDigitalTimeModeMeasuresTabularFigures() {
+        mTimeView.setFontFeatureSettings("smcp");
+        mClockView.setDigitalEnabled(true);
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:11:11+00:00[UTC]"));
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.FIXED_ADVANCE);
+        assertEquals("smcp,tnum", mTimeView.getFontFeatureSettings());
+
+        // The TextView is measured with the widest digit, so it's never narrower than the drawable.
+        float textWidth = mTimeView.getPaint().measureText(mTimeView.getText().toString());
+        float digitAdvance = FixedAdvanceTimeDrawable.getDigitAdvance(mTimeView.getPaint());
+        float colonWidth = mTimeView.getPaint().measureText(":");
+        assertTrue(textWidth >= 4 * digitAdvance + colonWidth - 0.01f);
+
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.TEXT_VIEW);
+        assertEquals("smcp", mTimeView.getFontFeatureSettings());
+    }
+
+    @Test
+    public void testGlyphAtlasDigitalTimeMode() {
+        mClockView.setDigitalEnabled(true);
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.GLYPH_ATLAS);
+        assertTrue(mClockView.getTimeDrawable() instanceof GlyphAtlasTimeDrawable);
+        GlyphAtlasTimeDrawable timeDrawable = (GlyphAtlasTimeDrawable) mClockView.getTimeDrawable();
+
+        mClockView.setTime(ZonedDateTime.parse("2026-05-14T10:15:30+00:00[UTC]"));
+        mClockView.onTimeTick();
+        mClockView.layout(0, 0, 400, 400);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(400, 400, Bitmap.Config.ARGB_8888));
+        mClockView.draw(canvas);
+        assertNotNull(timeDrawable.getAtlas());
+        assertFalse(timeDrawable.isAmbient());
+
+        // Low-bit ambient swaps to an aliased atlas
+        mClockView.setLowBitAmbient(true);
+        mClockView.setAmbientModeEnabled(true);
+        mClockView.draw(canvas);
+        assertTrue(timeDrawable.isAmbient());
+    }
+
+    @Test
+    public void testSaveAndRestoreDigitalTimeMode() {
+        mClockView.setDigitalTimeMode(ClockView.DigitalTimeMode.FIXED_ADVANCE);
+        Parcelable state = mClockView.onSaveInstanceState();
+
+        ClockView restoredView = new ClockView(mContext);
+        restoredView.onRestoreInstanceState(state);
+        assertEquals(ClockView.DigitalTimeMode.FIXED_ADVANCE, restoredView.getDigitalTimeMode());
+    }
+
     @Test
     public void testSaveAndRestoreInstanceState() {
         mClockView.setDigitalEnabled(true);
@@ -307,6 +409,7 @@ public class ClockViewTest {
 
         invalidated.set(false);
         Drawable mockDrawable = mock(Drawable.class);
+        when(mockDrawable.getDirtyBounds()).thenReturn(new Rect(0, 0, 10, 10));
         mClockView.invalidateDrawable(mockDrawable);
         assertTrue(invalidated.get());
 
@@ -0,0 +1,233 @@
+package com.xlythe.view.clock;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.graphics.drawable.Icon;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.wear.watchface.complications.data.ColorRamp;
+import androidx.wear.watchface.complications.data.ComplicationData;
+import androidx.wear.watchface.complications.data.ComplicationText;
+import androidx.wear.watchface.complications.data.ComplicationType;
+import androidx.wear.watchface.complications.data.EmptyComplicationData;
+import androidx.wear.watchface.complications.data.GoalProgressComplicationData;
+import androidx.wear.watchface.complications.data.LongTextComplicationData;
+import androidx.wear.watchface.complications.data.MonochromaticImage;
+import androidx.wear.watchface.complications.data.MonochromaticImageComplicationData;
+import androidx.wear.watchface.complications.data.NoDataComplicationData;
+import androidx.wear.watchface.complications.data.NoPermissionComplicationData;
+import androidx.wear.watchface.complications.data.NotConfiguredComplicationData;
+import androidx.wear.watchface.complications.data.PhotoImageComplicationData;
+import androidx.wear.watchface.complications.data.PlainComplicationText;
+import androidx.wear.watchface.complications.data.RangedValueComplicationData;
+import androidx.wear.watchface.complications.data.ShortTextComplicationData;
+import androidx.wear.watchface.complications.data.SmallImage;
+import androidx.wear.watchface.complications.data.SmallImageComplicationData;
+import androidx.wear.watchface.complications.data.SmallImageType;
+import androidx.wear.watchface.complications.data.WeightedElementsComplicationData;
+
+import com.xlythe.view.clock.utils.BitmapUtils;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the cost of rendering every ComplicationType with each ComplicationView.Renderer.
+ * Results are logged as a table with the average build, layout and draw time, and the bytes
+ * allocated per frame when the JVM supports allocation tracking.
+ *
+ * Robolectric timings are not device timings, but they are comparable between renderers. This is
+ * a benchmark, not a test, so it's skipped by the unit test suite. Remove the @Ignore to run it.
+ */
+@Ignore("Benchmark. Run by hand.")
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class ComplicationRendererBenchmarkTest {
+    private static final String TAG = ComplicationRendererBenchmarkTest.class.getSimpleName();
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 20;
+    private static final int SIZE = 96;
+    private static final ComplicationView.Renderer[] RENDERERS = {
+            ComplicationView.Renderer.DEFAULT,
+            ComplicationView.Renderer.ANDROIDX
+    };
+    private static final String[] RENDERER_NAMES = { "DEFAULT", "ANDROIDX" };
+
+    private Context mContext;
+    private Icon mIcon;
+    private Icon mPhoto;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mIcon = Icon.createWithBitmap(Bitmap.createBitmap(24, 24, Bitmap.Config.ARGB_8888));
+        mPhoto = Icon.createWithBitmap(Bitmap.createBitmap(SIZE * 2, SIZE * 2, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void benchmarkRenderers() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-20s %-9s %12s %12s %12s %14s%n",
+                "type", "renderer", "build (us)", "layout (us)", "draw (us)", "alloc (bytes)"));
+
+        int measured = 0;
+        for (ComplicationType type : ComplicationType.values()) {
+            if (createComplicationData(type) == null) {
+                Log.w(TAG, "Skipping unsupported complication type " + type);
+                continue;
+            }
+
+            for (int i = 0; i < RENDERERS.length; i++) {
+                Result result = measure(type, RENDERERS[i]);
+                report.append(String.format(Locale.US, "%-20s %-9s %12.1f %12.1f %12.1f %14s%n",
+                        type, RENDERER_NAMES[i],
+                        result.buildNanos / 1000f / ITERATIONS,
+                        result.layoutNanos / 1000f / ITERATIONS,
+                        result.drawNanos / 1000f / ITERATIONS,
+                        result.allocatedBytes < 0 ? "n/a" : Long.toString(result.allocatedBytes / ITERATIONS)));
+                measured++;
+            }
+        }
+
+        Log.i(TAG, "\n" + report);
+        assertTrue(measured > 0);
+    }
+
+    private Result measure(ComplicationType type, ComplicationView.Renderer renderer) {
+        ComplicationView view = new ComplicationView(mContext);
+        view.setComplicationStyle(type == ComplicationType.PHOTO_IMAGE ? ComplicationView.Style.BACKGROUND : ComplicationView.Style.CHIP);
+        view.setRenderer(renderer);
+
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            view.setComplicationData(createComplicationData(type));
+            BitmapUtils.measure(view, bounds);
+            view.draw(canvas);
+        }
+
+        Result result = new Result();
+        long allocationsBefore = getAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Each iteration needs a new instance, or ComplicationView will ignore it.
+            ComplicationData complicationData = createComplicationData(type);
+
+            long start = System.nanoTime();
+            view.setComplicationData(complicationData);
+            long built = System.nanoTime();
+            BitmapUtils.measure(view, bounds);
+            long laidOut = System.nanoTime();
+            view.draw(canvas);
+            long drawn = System.nanoTime();
+
+            result.buildNanos += built - start;
+            result.layoutNanos += laidOut - built;
+            result.drawNanos += drawn - laidOut;
+        }
+        long allocationsAfter = getAllocatedBytes();
+        result.allocatedBytes = allocationsBefore < 0 || allocationsAfter < 0 ? -1 : allocationsAfter - allocationsBefore;
+
+        return result;
+    }
+
+    /** Returns the bytes allocated by this thread so far, or -1 if the JVM can't tell us. */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!sunThreadMXBean.isThreadAllocatedMemorySupported() || !sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunThreadMXBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private ComplicationText text(String text) {
+        return new PlainComplicationText.Builder(text).build();
+    }
+
+    @Nullable
+    private ComplicationData createComplicationData(ComplicationType type) {
+        MonochromaticImage monochromaticImage = new MonochromaticImage.Builder(mIcon).build();
+        SmallImage smallImage = new SmallImage.Builder(mIcon, SmallImageType.ICON).build();
+        ColorRamp colorRamp = new ColorRamp(new int[]{Color.RED, Color.YELLOW, Color.GREEN}, true);
+
+        switch (type) {
+            case NO_DATA:
+                return new NoDataComplicationData();
+            case EMPTY:
+                return new EmptyComplicationData();
+            case NOT_CONFIGURED:
+                return new NotConfiguredComplicationData();
+            case NO_PERMISSION:
+                return new NoPermissionComplicationData.Builder()
+                        .setText(text("Grant"))
+                        .build();
+            case SHORT_TEXT:
+                return new ShortTextComplicationData.Builder(text("12:34"), text("Time"))
+                        .setTitle(text("Time"))
+                        .setMonochromaticImage(monochromaticImage)
+                        .build();
+            case LONG_TEXT:
+                return new LongTextComplicationData.Builder(text("Meeting with the team"), text("Next event"))
+                        .setTitle(text("Next event"))
+                        .setMonochromaticImage(monochromaticImage)
+                        .build();
+            case RANGED_VALUE:
+                return new RangedValueComplicationData.Builder(40f, 0f, 100f, text("Battery"))
+                        .setText(text("40%"))
+                        .setMonochromaticImage(monochromaticImage)
+                        .setColorRamp(colorRamp)
+                        .build();
+            case GOAL_PROGRESS:
+                return new GoalProgressComplicationData.Builder(6000f, 10000f, text("Steps"))
+                        .setText(text("6000"))
+                        .setMonochromaticImage(monochromaticImage)
+                        .setColorRamp(colorRamp)
+                        .build();
+            case WEIGHTED_ELEMENTS:
+                return new WeightedElementsComplicationData.Builder(Arrays.asList(
+                        new WeightedElementsComplicationData.Element(1f, Color.RED),
+                        new WeightedElementsComplicationData.Element(2f, Color.GREEN),
+                        new WeightedElementsComplicationData.Element(3f, Color.BLUE),
+                        new WeightedElementsComplicationData.Element(4f, Color.YELLOW)), text("Chart"))
+                        .setElementBackgroundColor(Color.BLACK)
+                        .build();
+            case MONOCHROMATIC_IMAGE:
+                return new MonochromaticImageComplicationData.Builder(monochromaticImage, text("Icon")).build();
+            case SMALL_IMAGE:
+                return new SmallImageComplicationData.Builder(smallImage, text("Image")).build();
+            case PHOTO_IMAGE:
+                return new PhotoImageComplicationData.Builder(mPhoto, text("Photo")).build();
+            default:
+                return null;
+        }
+    }
+
+    private static class Result {
+        long buildNanos;
+        long layoutNanos;
+        long drawNanos;
+        long allocatedBytes;
+    }
+}
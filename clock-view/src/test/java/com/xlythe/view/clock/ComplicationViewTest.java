@@ -15,6 +15,7 @@ import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.ViewParent;
+import android.widget.FrameLayout;
 
 import androidx.activity.ComponentActivity;
 import androidx.test.core.app.ApplicationProvider;
@@ -39,6 +40,7 @@ import androidx.wear.watchface.complications.data.SmallImage;
 import androidx.wear.watchface.complications.data.SmallImageComplicationData;
 import androidx.wear.watchface.complications.data.WeightedElementsComplicationData;
 
+import com.xlythe.view.clock.utils.BitmapPool;
 import com.xlythe.watchface.clock.PermissionActivity;
 
 import org.junit.Before;
@@ -51,6 +53,7 @@ import org.robolectric.shadows.ShadowLooper;
 
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -59,6 +62,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
@@ -566,6 +570,65 @@ public class ComplicationViewTest {
         assertTrue(mComplicationView.getDrawable() instanceof NonTintableDrawable);
     }
 
+    @Test
+    public void testSetComplicationDataPhotoImageIsSizedToView() {
+        Icon photo = Icon.createWithBitmap(Bitmap.createBitmap(1000, 800, Bitmap.Config.ARGB_8888));
+        mComplicationView.layout(0, 0, 100, 50);
+
+        mComplicationView.setComplicationData(createPhotoImageData("Photo Desc", photo));
+        assertNotNull(mComplicationView.getPhotoBitmap());
+        assertEquals(100, mComplicationView.getPhotoBitmap().getWidth());
+        assertEquals(50, mComplicationView.getPhotoBitmap().getHeight());
+
+        // Resizing the view decodes the photo again, without rendering the rest of the data again
+        mComplicationView.setContentDescription("Unchanged");
+        mComplicationView.layout(0, 0, 60, 60);
+        assertEquals(60, mComplicationView.getPhotoBitmap().getWidth());
+        assertEquals(60, mComplicationView.getPhotoBitmap().getHeight());
+        assertEquals("Unchanged", mComplicationView.getContentDescription());
+        assertTrue(mComplicationView.getDrawable() instanceof NonTintableDrawable);
+    }
+
+    @Test
+    public void testPhotoBitmapIsRecycledWhenDataChanges() {
+        BitmapPool.clear();
+        mComplicationView.layout(0, 0, 100, 100);
+        mComplicationView.setComplicationData(createPhotoImageData("Photo Desc", mSampleIcon));
+        Bitmap photo = mComplicationView.getPhotoBitmap();
+        assertNotNull(photo);
+
+        mComplicationView.setComplicationData(createShortTextData("Title", "Text", "Desc", null));
+        assertNull(mComplicationView.getPhotoBitmap());
+        assertEquals(1, BitmapPool.size());
+        assertSame(photo, BitmapPool.obtain(100, 100, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void testPhotoBitmapIsRecycledWhileDetached() {
+        BitmapPool.clear();
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        FrameLayout container = new FrameLayout(activity);
+        activity.setContentView(container);
+        ShadowLooper.idleMainLooper();
+
+        ComplicationView view = new ComplicationView(activity);
+        container.addView(view, 100, 100);
+        view.layout(0, 0, 100, 100);
+        view.setComplicationData(createPhotoImageData("Photo Desc", mSampleIcon));
+        Bitmap photo = view.getPhotoBitmap();
+        assertNotNull(photo);
+
+        container.removeView(view);
+        assertNull(view.getPhotoBitmap());
+        assertNull(view.getDrawable());
+        assertSame(photo, BitmapPool.obtain(100, 100, Bitmap.Config.ARGB_8888));
+
+        // The photo is decoded again once we're shown again
+        container.addView(view, 100, 100);
+        assertNotNull(view.getPhotoBitmap());
+        assertTrue(view.getDrawable() instanceof NonTintableDrawable);
+    }
+
     @Test
     public void testSetComplicationDataNoPermission() {
         MonochromaticImage monoImage = createMonochromaticImage(mSampleIcon, mSampleAmbientIcon, false);
@@ -716,4 +779,52 @@ public class ComplicationViewTest {
         editorView.setComplicationData(createEmptyData());
         assertNotNull(editorView.getDrawable()); // PlaceholderDrawable is set
     }
+
+    @Test
+    public void testDefaultRenderer() {
+        assertEquals(ComplicationView.Renderer.DEFAULT, mComplicationView.getRenderer());
+        assertEquals(ComplicationView.Renderer.DEFAULT, mComplicationView.getRenderer(ComplicationType.SHORT_TEXT));
+
+        mComplicationView.setComplicationData(createShortTextData("Title", "Text", "Desc", null));
+        assertTrue(mComplicationView.getDrawable() instanceof ComplicationDrawable);
+    }
+
+    @Test
+    public void testAndroidxRenderer() {
+        mComplicationView.setRenderer(ComplicationView.Renderer.ANDROIDX);
+        mComplicationView.setComplicationData(createShortTextData("Title", "Text", "Desc", null));
+
+        assertTrue(mComplicationView.getDrawable() instanceof androidx.wear.watchface.complications.rendering.ComplicationDrawable);
+        assertEquals("Desc", mComplicationView.getContentDescription().toString());
+    }
+
+    @Test
+    public void testRendererPerType() {
+        List<ComplicationType> renderedTypes = new ArrayList<>();
+        ComplicationView.Renderer recordingRenderer = (view, data) -> renderedTypes.add(data.getType());
+
+        mComplicationView.setRenderer(ComplicationType.RANGED_VALUE, recordingRenderer);
+        assertEquals(recordingRenderer, mComplicationView.getRenderer(ComplicationType.RANGED_VALUE));
+        assertEquals(ComplicationView.Renderer.DEFAULT, mComplicationView.getRenderer(ComplicationType.SHORT_TEXT));
+
+        mComplicationView.setComplicationData(createShortTextData("Title", "Text", "Desc", null));
+        assertTrue(renderedTypes.isEmpty());
+
+        mComplicationView.setComplicationData(createRangedValueData("Title", "Text", "Desc", null, 0f, 100f, 50f, null));
+        assertEquals(Arrays.asList(ComplicationType.RANGED_VALUE), renderedTypes);
+
+        // Clearing the override falls back to the view's renderer, and re-renders the current data.
+        mComplicationView.setRenderer(ComplicationType.RANGED_VALUE, null);
+        assertEquals(ComplicationView.Renderer.DEFAULT, mComplicationView.getRenderer(ComplicationType.RANGED_VALUE));
+        assertTrue(mComplicationView.getDrawable() instanceof RangeDrawable);
+    }
+
+    @Test
+    public void testSetRendererRerendersCurrentData() {
+        mComplicationView.setComplicationData(createShortTextData("Title", "Text", "Desc", null));
+        assertTrue(mComplicationView.getDrawable() instanceof ComplicationDrawable);
+
+        mComplicationView.setRenderer(ComplicationView.Renderer.ANDROIDX);
+        assertTrue(mComplicationView.getDrawable() instanceof androidx.wear.watchface.complications.rendering.ComplicationDrawable);
+    }
 }
@@ -0,0 +1,150 @@
+package com.xlythe.view.clock;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class FixedAdvanceTimeDrawableTest {
+    private FixedAdvanceTimeDrawable mDrawable;
+
+    @Before
+    public void setUp() {
+        mDrawable = new FixedAdvanceTimeDrawable();
+        TextPaint paint = new TextPaint();
+        paint.setTextSize(40f);
+        mDrawable.setTextPaint(paint);
+        mDrawable.setBounds(0, 0, 400, 100);
+    }
+
+    @Test
+    public void testLaysOutOncePerShape() {
+        mDrawable.setText("12:34:56");
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(1, mDrawable.getLayoutCount());
+
+        // Ticking digits keep the same shape
+        mDrawable.setText("12:34:57");
+        mDrawable.draw(mock(Canvas.class));
+        mDrawable.setText("12:35:00");
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(1, mDrawable.getLayoutCount());
+        assertEquals("12:35:00", mDrawable.getText().toString());
+
+        // A new shape is laid out again
+        mDrawable.setText("1:00");
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(2, mDrawable.getLayoutCount());
+
+        // And so is a new size
+        mDrawable.setBounds(0, 0, 200, 100);
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(3, mDrawable.getLayoutCount());
+    }
+
+    @Test
+    public void testPaintChangesRelayout() {
+        mDrawable.setText("12:34");
+        mDrawable.draw(mock(Canvas.class));
+
+        TextPaint paint = new TextPaint();
+        paint.setTextSize(40f);
+        mDrawable.setTextPaint(paint);
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(1, mDrawable.getLayoutCount());
+
+        paint.setTextSize(50f);
+        mDrawable.setTextPaint(paint);
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(2, mDrawable.getLayoutCount());
+
+        // Colors don't affect the layout
+        mDrawable.setColor(0xFFFF0000);
+        mDrawable.draw(mock(Canvas.class));
+        assertEquals(2, mDrawable.getLayoutCount());
+    }
+
+    @Test
+    public void testDrawsEveryCell() {
+        mDrawable.setText("12:34:56");
+        Canvas canvas = mock(Canvas.class);
+        mDrawable.draw(canvas);
+        verify(canvas, times(8)).drawText(any(char[].class), anyInt(), eq(1), anyFloat(), anyFloat(), any(Paint.class));
+    }
+
+    @Test
+    public void testOnlyChangedCellsAreInvalidated() {
+        mDrawable.setText("12:34:56");
+        mDrawable.draw(mock(Canvas.class));
+
+        Rect invalidated = new Rect();
+        Drawable.Callback callback = mock(Drawable.Callback.class);
+        doAnswer(invocation -> {
+            invalidated.set(((Drawable) invocation.getArgument(0)).getDirtyBounds());
+            return null;
+        }).when(callback).invalidateDrawable(any());
+        mDrawable.setCallback(callback);
+
+        mDrawable.setText("12:34:57");
+        verify(callback).invalidateDrawable(mDrawable);
+        assertTrue(invalidated.width() > 0);
+        assertTrue(invalidated.width() < mDrawable.getBounds().width());
+        assertTrue(invalidated.left > mDrawable.getBounds().left);
+
+        // Once invalidated, the dirty bounds go back to the full bounds
+        assertEquals(mDrawable.getBounds(), mDrawable.getDirtyBounds());
+
+        // Setting the same time again doesn't invalidate anything
+        mDrawable.setText("12:34:57");
+        verify(callback).invalidateDrawable(mDrawable);
+    }
+
+    @Test
+    public void testCellsOutsideOfClipAreSkipped() {
+        mDrawable.setText("12:34:56");
+        mDrawable.draw(mock(Canvas.class));
+
+        Rect invalidated = new Rect();
+        Drawable.Callback callback = mock(Drawable.Callback.class);
+        doAnswer(invocation -> {
+            invalidated.set(((Drawable) invocation.getArgument(0)).getDirtyBounds());
+            return null;
+        }).when(callback).invalidateDrawable(any());
+        mDrawable.setCallback(callback);
+        mDrawable.setText("12:34:57");
+
+        Canvas canvas = mock(Canvas.class);
+        when(canvas.getClipBounds(any(Rect.class))).thenAnswer(invocation -> {
+            Rect clip = invocation.getArgument(0);
+            clip.set(invalidated.left, 0, invalidated.right, 100);
+            return true;
+        });
+        mDrawable.draw(canvas);
+
+        // Only the changed cell (and at most a neighbour sharing its edge) is drawn.
+        verify(canvas, atMost(2)).drawText(any(char[].class), anyInt(), eq(1), anyFloat(), anyFloat(), any(Paint.class));
+    }
+}
@@ -0,0 +1,151 @@
+package com.xlythe.view.clock;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.TextPaint;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class GlyphAtlasTest {
+    private Context mContext;
+    private TextPaint mPaint;
+
+    @Before
+    public void setUp() {
+        GlyphAtlas.clear();
+        mContext = ApplicationProvider.getApplicationContext();
+        mPaint = new TextPaint();
+        mPaint.setTextSize(40f);
+    }
+
+    @After
+    public void tearDown() {
+        GlyphAtlas.clear();
+    }
+
+    @Test
+    public void testSameStyleSharesAtlas() {
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+        assertSame(atlas, GlyphAtlas.obtain(mContext, new TextPaint(mPaint), false));
+        assertEquals(1, GlyphAtlas.size());
+
+        // Colors are applied when blitting, so they share an atlas.
+        TextPaint red = new TextPaint(mPaint);
+        red.setColor(Color.RED);
+        assertSame(atlas, GlyphAtlas.obtain(mContext, red, false));
+        assertTrue(atlas.matches(red, false));
+
+        TextPaint larger = new TextPaint(mPaint);
+        larger.setTextSize(80f);
+        assertFalse(atlas.matches(larger, false));
+        assertNotSame(atlas, GlyphAtlas.obtain(mContext, larger, false));
+        assertNotSame(atlas, GlyphAtlas.obtain(mContext, mPaint, true));
+        assertEquals(3, GlyphAtlas.size());
+    }
+
+    @Test
+    public void testOldestAtlasIsReleased() {
+        GlyphAtlas first = GlyphAtlas.obtain(mContext, mPaint, false);
+        for (int i = 0; i < 4; i++) {
+            TextPaint paint = new TextPaint(mPaint);
+            paint.setTextSize(10f + i);
+            GlyphAtlas.obtain(mContext, paint, false);
+        }
+        assertEquals(4, GlyphAtlas.size());
+        assertTrue(first.isReleased());
+        assertFalse(first.matches(mPaint, false));
+    }
+
+    @Test
+    public void testClearReleasesAtlases() {
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+        assertTrue(atlas.matches(mPaint, false));
+
+        GlyphAtlas.clear();
+        assertEquals(0, GlyphAtlas.size());
+        assertTrue(atlas.isReleased());
+        assertFalse(atlas.draw(mock(Canvas.class), '1', 0, 40));
+    }
+
+    @Test
+    public void testTrimMemoryReleasesAtlases() {
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+
+        Application application = ApplicationProvider.getApplicationContext();
+        application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertFalse(atlas.isReleased());
+
+        application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertTrue(atlas.isReleased());
+        assertEquals(0, GlyphAtlas.size());
+    }
+
+    @Test
+    public void testDrawsOnlyKnownGlyphs() {
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+        Canvas canvas = mock(Canvas.class);
+
+        for (char glyph : GlyphAtlas.GLYPHS.toCharArray()) {
+            assertTrue(atlas.draw(canvas, glyph, 0, 40));
+        }
+        assertFalse(atlas.draw(canvas, 'A', 0, 40));
+        verify(canvas, times(GlyphAtlas.GLYPHS.length())).drawBitmap(any(Bitmap.class), any(Rect.class), any(RectF.class), any());
+    }
+
+    @Test
+    public void testReleaseDoesNotRecycleBitmap() {
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+        Canvas canvas = mock(Canvas.class);
+        assertTrue(atlas.draw(canvas, '1', 0, 40));
+        ArgumentCaptor<Bitmap> bitmap = ArgumentCaptor.forClass(Bitmap.class);
+        verify(canvas).drawBitmap(bitmap.capture(), any(Rect.class), any(RectF.class), any());
+
+        // Another drawable may still be drawing with it.
+        GlyphAtlas.clear();
+        assertFalse(bitmap.getValue().isRecycled());
+    }
+
+    @Test
+    public void testDigitCellsSpanDigitAdvance() {
+        mPaint.setFontFeatureSettings("tnum");
+        GlyphAtlas atlas = GlyphAtlas.obtain(mContext, mPaint, false);
+        float digitAdvance = FixedAdvanceTimeDrawable.getDigitAdvance(mPaint);
+
+        for (char glyph : "0123456789".toCharArray()) {
+            Canvas canvas = mock(Canvas.class);
+            RectF dst = new RectF();
+            assertTrue(atlas.draw(canvas, glyph, 10, 40, new Rect(), dst, new Paint()));
+            verify(canvas).drawBitmap(any(Bitmap.class), any(Rect.class), eq(dst), any());
+            assertTrue(dst.left <= 10);
+            assertTrue(dst.right >= 10 + digitAdvance);
+        }
+    }
+}
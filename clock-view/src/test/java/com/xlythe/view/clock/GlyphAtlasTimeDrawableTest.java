@@ -0,0 +1,136 @@
+package com.xlythe.view.clock;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.text.TextPaint;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class GlyphAtlasTimeDrawableTest {
+    private GlyphAtlasTimeDrawable mDrawable;
+
+    @Before
+    public void setUp() {
+        GlyphAtlas.clear();
+        mDrawable = new GlyphAtlasTimeDrawable(ApplicationProvider.getApplicationContext());
+        TextPaint paint = new TextPaint();
+        paint.setTextSize(40f);
+        mDrawable.setTextPaint(paint);
+        mDrawable.setColor(Color.WHITE);
+        mDrawable.setBounds(0, 0, 400, 100);
+    }
+
+    @After
+    public void tearDown() {
+        GlyphAtlas.clear();
+    }
+
+    @Test
+    public void testBlitsGlyphsFromAtlas() {
+        mDrawable.setText("12:34:56");
+        Canvas canvas = mock(Canvas.class);
+        mDrawable.draw(canvas);
+
+        verify(canvas, times(8)).drawBitmap(any(Bitmap.class), any(Rect.class), any(RectF.class), any());
+        verify(canvas, never()).drawText(any(char[].class), anyInt(), anyInt(), anyFloat(), anyFloat(), any(Paint.class));
+    }
+
+    @Test
+    public void testUnknownGlyphsFallBackToText() {
+        mDrawable.setText("12:34 PM");
+        Canvas canvas = mock(Canvas.class);
+        mDrawable.draw(canvas);
+
+        verify(canvas, times(5)).drawBitmap(any(Bitmap.class), any(Rect.class), any(RectF.class), any());
+        verify(canvas, times(3)).drawText(any(char[].class), anyInt(), anyInt(), anyFloat(), anyFloat(), any(Paint.class));
+    }
+
+    @Test
+    public void testAtlasFollowsStyle() {
+        mDrawable.setText("12:34");
+        mDrawable.draw(mock(Canvas.class));
+        GlyphAtlas atlas = mDrawable.getAtlas();
+        assertNotNull(atlas);
+
+        // Ticking reuses the atlas
+        mDrawable.setText("12:35");
+        mDrawable.draw(mock(Canvas.class));
+        assertSame(atlas, mDrawable.getAtlas());
+
+        // Colors are applied when blitting, so they reuse the atlas too
+        mDrawable.setColor(Color.RED);
+        mDrawable.draw(mock(Canvas.class));
+        assertSame(atlas, mDrawable.getAtlas());
+
+        TextPaint paint = new TextPaint();
+        paint.setTextSize(80f);
+        mDrawable.setTextPaint(paint);
+        mDrawable.draw(mock(Canvas.class));
+        assertNotSame(atlas, mDrawable.getAtlas());
+
+        atlas = mDrawable.getAtlas();
+        mDrawable.setAmbient(true);
+        mDrawable.draw(mock(Canvas.class));
+        assertNotSame(atlas, mDrawable.getAtlas());
+    }
+
+    @Test
+    public void testBlitsWithColorAlphaAndColorFilter() {
+        mDrawable.setText("12");
+        mDrawable.setColor(Color.RED);
+        mDrawable.setAlpha(128);
+        ColorFilter colorFilter = new PorterDuffColorFilter(Color.BLUE, PorterDuff.Mode.SRC_IN);
+        mDrawable.setColorFilter(colorFilter);
+        Canvas canvas = mock(Canvas.class);
+        mDrawable.draw(canvas);
+
+        ArgumentCaptor<Paint> paint = ArgumentCaptor.forClass(Paint.class);
+        verify(canvas, times(2)).drawBitmap(any(Bitmap.class), any(Rect.class), any(RectF.class), paint.capture());
+        assertEquals(Color.RED & 0x00FFFFFF, paint.getValue().getColor() & 0x00FFFFFF);
+        assertEquals(128, paint.getValue().getAlpha());
+        assertSame(colorFilter, paint.getValue().getColorFilter());
+    }
+
+    @Test
+    public void testAtlasIsRebuiltAfterRelease() {
+        mDrawable.setText("12:34");
+        mDrawable.draw(mock(Canvas.class));
+        GlyphAtlas atlas = mDrawable.getAtlas();
+
+        GlyphAtlas.clear();
+        mDrawable.draw(mock(Canvas.class));
+        assertNotSame(atlas, mDrawable.getAtlas());
+        assertFalse(mDrawable.getAtlas().isReleased());
+        assertEquals(1, GlyphAtlas.size());
+    }
+}
@@ -22,7 +22,9 @@ import org.robolectric.annotation.Config;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -276,21 +278,108 @@ public class RangeDrawableTest {
                 .build();
         drawable1.setBounds(0, 0, 200, 200);
 
-        // Create second drawable with exact same colors to trigger collision in sReservedSweepGradientColors
+        // SweepGradient can corrupt itself when multiple instances with the same params are in use at
+        // the same time. A second drawable with exactly the same colors must reuse the first shader.
         RangeDrawable drawable2 = new RangeDrawable.Builder(mContext)
                 .range(0f, 100f)
-                .value(50f)
+                .value(25f)
                 .colors(colors, true)
                 .build();
         drawable2.setBounds(0, 0, 200, 200);
 
-        // Re-bind drawable1 to trigger sReservedSweepGradientColors.remove
-        drawable1.setBounds(0, 0, 250, 250);
-
         Canvas mockCanvas = mock(Canvas.class);
         drawable1.draw(mockCanvas);
         drawable2.draw(mockCanvas);
 
+        ArgumentCaptor<Paint> paintCaptor = ArgumentCaptor.forClass(Paint.class);
+        verify(mockCanvas, times(4)).drawPath(any(Path.class), paintCaptor.capture());
+        Shader shader1 = paintCaptor.getAllValues().get(1).getShader();
+        Shader shader2 = paintCaptor.getAllValues().get(3).getShader();
+        assertNotNull(shader1);
+        assertSame(shader1, shader2);
+
+        // Re-binding drawable1 to a new size gives it its own shader, without disturbing drawable2.
+        drawable1.setBounds(0, 0, 250, 250);
+        clearInvocations(mockCanvas);
+        drawable1.draw(mockCanvas);
+        drawable2.draw(mockCanvas);
+
+        paintCaptor = ArgumentCaptor.forClass(Paint.class);
+        verify(mockCanvas, times(4)).drawPath(any(Path.class), paintCaptor.capture());
+        assertNotSame(shader1, paintCaptor.getAllValues().get(1).getShader());
+        assertSame(shader2, paintCaptor.getAllValues().get(3).getShader());
+    }
+
+    @Test
+    public void testGeometrySharedBetweenDrawablesOfSameSize() {
+        RangeDrawable drawable1 = new RangeDrawable.Builder(mContext)
+                .range(0f, 100f)
+                .value(25f)
+                .build();
+        drawable1.setBounds(0, 0, 200, 100);
+
+        RangeDrawable drawable2 = new RangeDrawable.Builder(mContext)
+                .range(0f, 100f)
+                .value(75f)
+                .build();
+        drawable2.setBounds(50, 50, 250, 150);
+
+        assertNotNull(drawable1.getGeometry());
+        assertSame(drawable1.getGeometry(), drawable2.getGeometry());
+
+        drawable2.setBounds(0, 0, 300, 100);
+        assertNotSame(drawable1.getGeometry(), drawable2.getGeometry());
+    }
+
+    @Test
+    public void testSetValueReusesGeometry() {
+        RangeDrawable drawable = new RangeDrawable.Builder(mContext)
+                .range(0f, 100f)
+                .value(50f)
+                .build();
+        drawable.setBounds(0, 0, 200, 200);
+        RangeDrawable.Geometry geometry = drawable.getGeometry();
+
+        drawable.setValue(100f);
+        assertSame(geometry, drawable.getGeometry());
+
+        Canvas mockCanvas = mock(Canvas.class);
+        drawable.draw(mockCanvas);
+
+        ArgumentCaptor<Paint> paintCaptor = ArgumentCaptor.forClass(Paint.class);
+        verify(mockCanvas, times(2)).drawPath(eq(geometry.path), paintCaptor.capture());
+        assertNull(paintCaptor.getAllValues().get(1).getPathEffect());
+    }
+
+    @Test
+    public void testSetValueUpdatesSteps() {
+        RangeDrawable drawable = new RangeDrawable.Builder(mContext)
+                .range(0f, 100f)
+                .value(10f)
+                .colors(new int[]{Color.RED, Color.YELLOW, Color.GREEN}, false)
+                .build();
+        drawable.setBounds(0, 0, 200, 200);
+
+        Canvas mockCanvas = mock(Canvas.class);
+        drawable.draw(mockCanvas);
+        verify(mockCanvas, times(2)).drawPath(any(Path.class), any(Paint.class));
+
+        drawable.setValue(90f);
+        clearInvocations(mockCanvas);
+        drawable.draw(mockCanvas);
         verify(mockCanvas, times(4)).drawPath(any(Path.class), any(Paint.class));
     }
+
+    @Test
+    public void testDrawBeforeBounds() {
+        RangeDrawable drawable = new RangeDrawable.Builder(mContext)
+                .range(0f, 100f)
+                .value(50f)
+                .build();
+        drawable.setValue(60f);
+
+        Canvas mockCanvas = mock(Canvas.class);
+        drawable.draw(mockCanvas);
+        verify(mockCanvas, times(0)).drawPath(any(Path.class), any(Paint.class));
+    }
 }
@@ -0,0 +1,101 @@
+package com.xlythe.view.clock;
+
+import android.graphics.Color;
+import android.graphics.Matrix;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class SweepGradientCacheTest {
+
+    @Test
+    public void testIdenticalParamsShareOneShader() {
+        int[] colors = new int[]{Color.RED, Color.GREEN, Color.BLUE};
+        int initialSize = SweepGradientCache.size();
+
+        SweepGradientCache.Entry entry1 = SweepGradientCache.acquire(colors, 50f, 50f, -90f);
+        SweepGradientCache.Entry entry2 = SweepGradientCache.acquire(colors.clone(), 50f, 50f, -90f);
+
+        assertSame(entry1, entry2);
+        assertSame(entry1.getGradient(), entry2.getGradient());
+        assertEquals(2, entry1.getReferenceCount());
+        assertEquals(initialSize + 1, SweepGradientCache.size());
+
+        SweepGradientCache.release(entry1);
+        assertEquals(1, entry2.getReferenceCount());
+        assertEquals(initialSize + 1, SweepGradientCache.size());
+
+        SweepGradientCache.release(entry2);
+        assertEquals(0, entry2.getReferenceCount());
+        assertEquals(initialSize, SweepGradientCache.size());
+    }
+
+    @Test
+    public void testDifferentParamsUseDifferentShaders() {
+        int[] colors = new int[]{Color.RED, Color.GREEN};
+
+        SweepGradientCache.Entry entry = SweepGradientCache.acquire(colors, 10f, 10f, -90f);
+        SweepGradientCache.Entry otherColors = SweepGradientCache.acquire(new int[]{Color.RED, Color.BLUE}, 10f, 10f, -90f);
+        SweepGradientCache.Entry otherCenter = SweepGradientCache.acquire(colors, 20f, 10f, -90f);
+        SweepGradientCache.Entry otherRotation = SweepGradientCache.acquire(colors, 10f, 10f, 0f);
+
+        assertNotSame(entry, otherColors);
+        assertNotSame(entry, otherCenter);
+        assertNotSame(entry, otherRotation);
+
+        assertTrue(entry.matches(colors, 10f, 10f, -90f));
+        assertFalse(entry.matches(colors, 10f, 10f, 0f));
+
+        SweepGradientCache.release(entry);
+        SweepGradientCache.release(otherColors);
+        SweepGradientCache.release(otherCenter);
+        SweepGradientCache.release(otherRotation);
+    }
+
+    @Test
+    public void testCallerCannotMutateCachedColors() {
+        int[] colors = new int[]{Color.RED, Color.GREEN};
+        SweepGradientCache.Entry entry = SweepGradientCache.acquire(colors, 10f, 10f, -90f);
+
+        colors[0] = Color.BLACK;
+        assertTrue(entry.matches(new int[]{Color.RED, Color.GREEN}, 10f, 10f, -90f));
+
+        SweepGradientCache.release(entry);
+    }
+
+    @Test
+    public void testRotationAppliedToLocalMatrix() {
+        int[] colors = new int[]{Color.RED, Color.GREEN};
+        SweepGradientCache.Entry entry = SweepGradientCache.acquire(colors, 10f, 10f, -90f);
+
+        Matrix matrix = new Matrix();
+        assertTrue(entry.getGradient().getLocalMatrix(matrix));
+        assertFalse(matrix.isIdentity());
+
+        SweepGradientCache.release(entry);
+    }
+
+    @Test
+    public void testOverRelease() {
+        SweepGradientCache.Entry entry = SweepGradientCache.acquire(new int[]{Color.CYAN, Color.MAGENTA}, 1f, 1f, 0f);
+        int size = SweepGradientCache.size();
+
+        SweepGradientCache.release(entry);
+        SweepGradientCache.release(entry);
+        SweepGradientCache.release(null);
+
+        assertEquals(0, entry.getReferenceCount());
+        assertEquals(size - 1, SweepGradientCache.size());
+    }
+}
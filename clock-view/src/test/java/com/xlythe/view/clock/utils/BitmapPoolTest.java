@@ -0,0 +1,170 @@
+package com.xlythe.view.clock.utils;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class BitmapPoolTest {
+    private int mOriginalMaxSizeInBytes;
+
+    @Before
+    public void setUp() {
+        mOriginalMaxSizeInBytes = BitmapPool.getMaxSizeInBytes();
+        BitmapPool.clear();
+    }
+
+    @After
+    public void tearDown() {
+        BitmapPool.setMaxSizeInBytes(mOriginalMaxSizeInBytes);
+        BitmapPool.clear();
+    }
+
+    @Test
+    public void testObtainCreatesBitmap() {
+        Bitmap bitmap = BitmapPool.obtain(10, 20, Bitmap.Config.ARGB_8888);
+        assertEquals(10, bitmap.getWidth());
+        assertEquals(20, bitmap.getHeight());
+        assertEquals(Bitmap.Config.ARGB_8888, bitmap.getConfig());
+        assertTrue(bitmap.isMutable());
+    }
+
+    @Test
+    public void testRecycledBitmapIsReused() {
+        Bitmap bitmap = BitmapPool.obtain(10, 10, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        BitmapPool.recycle(bitmap);
+        assertEquals(1, BitmapPool.size());
+        assertEquals(bitmap.getAllocationByteCount(), BitmapPool.getSizeInBytes());
+
+        Bitmap reused = BitmapPool.obtain(10, 10, Bitmap.Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        assertEquals(Color.TRANSPARENT, reused.getPixel(5, 5));
+        assertEquals(0, BitmapPool.size());
+        assertEquals(0, BitmapPool.getSizeInBytes());
+    }
+
+    @Test
+    public void testDifferentSizeIsNotReused() {
+        Bitmap bitmap = BitmapPool.obtain(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool.recycle(bitmap);
+
+        assertNotSame(bitmap, BitmapPool.obtain(10, 11, Bitmap.Config.ARGB_8888));
+        assertNotSame(bitmap, BitmapPool.obtain(10, 10, Bitmap.Config.RGB_565));
+        assertEquals(1, BitmapPool.size());
+    }
+
+    @Test
+    public void testSameBucketIsReconfigured() {
+        Bitmap bitmap = BitmapPool.obtain(16, 16, Bitmap.Config.ARGB_8888);
+        BitmapPool.recycle(bitmap);
+
+        // 15x15 fits in the same power of two bucket (1024 bytes) as 16x16
+        Bitmap reused = BitmapPool.obtain(15, 15, Bitmap.Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        assertEquals(15, reused.getWidth());
+        assertEquals(15, reused.getHeight());
+        assertEquals(0, BitmapPool.size());
+
+        // But a much smaller request doesn't pin a large bitmap
+        BitmapPool.recycle(reused);
+        assertNotSame(reused, BitmapPool.obtain(4, 4, Bitmap.Config.ARGB_8888));
+        assertEquals(1, BitmapPool.size());
+    }
+
+    @Test
+    public void testExactMatchIsPreferred() {
+        Bitmap larger = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        Bitmap exact = Bitmap.createBitmap(15, 15, Bitmap.Config.ARGB_8888);
+        BitmapPool.recycle(exact);
+        BitmapPool.recycle(larger);
+
+        assertSame(exact, BitmapPool.obtain(15, 15, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void testTrimMemory() {
+        BitmapPool.recycle(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        BitmapPool.recycle(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        BitmapPool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(2, BitmapPool.size());
+
+        BitmapPool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(1, BitmapPool.size());
+
+        BitmapPool.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, BitmapPool.size());
+    }
+
+    @Test
+    public void testRegisteredComponentCallbacksTrimMemory() {
+        Application application = ApplicationProvider.getApplicationContext();
+        BitmapPool.registerComponentCallbacks(application);
+        BitmapPool.registerComponentCallbacks(application);
+        BitmapPool.recycle(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, BitmapPool.size());
+    }
+
+    @Test
+    public void testImmutableAndRecycledBitmapsAreIgnored() {
+        Bitmap immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        BitmapPool.recycle(immutable);
+
+        Bitmap recycled = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        recycled.recycle();
+        BitmapPool.recycle(recycled);
+
+        BitmapPool.recycle(null);
+        assertEquals(0, BitmapPool.size());
+    }
+
+    @Test
+    public void testRecyclingTwiceIsIgnored() {
+        Bitmap bitmap = BitmapPool.obtain(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool.recycle(bitmap);
+        BitmapPool.recycle(bitmap);
+        assertEquals(1, BitmapPool.size());
+    }
+
+    @Test
+    public void testLeastRecentlyRecycledIsEvicted() {
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool.setMaxSizeInBytes(first.getAllocationByteCount());
+
+        BitmapPool.recycle(first);
+        BitmapPool.recycle(second);
+        assertEquals(1, BitmapPool.size());
+        assertSame(second, BitmapPool.obtain(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void testClear() {
+        BitmapPool.recycle(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        BitmapPool.recycle(Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888));
+        assertEquals(2, BitmapPool.size());
+
+        BitmapPool.clear();
+        assertEquals(0, BitmapPool.size());
+        assertEquals(0, BitmapPool.getSizeInBytes());
+    }
+}
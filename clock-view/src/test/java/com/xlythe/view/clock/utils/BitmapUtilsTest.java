@@ -10,6 +10,7 @@ import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
 import android.graphics.drawable.LayerDrawable;
 import android.graphics.drawable.RippleDrawable;
 import android.graphics.drawable.ScaleDrawable;
@@ -17,6 +18,7 @@ import android.graphics.drawable.StateListDrawable;
 import android.view.Gravity;
 import android.view.View;
 import android.widget.FrameLayout;
+import android.widget.TextView;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -32,7 +34,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -106,6 +110,39 @@ public class BitmapUtilsTest {
         }
     }
 
+    @Test
+    public void testGetHandAsBitmapAtZeroDegreesIsACopy() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Calendar mockCalendar = mock(Calendar.class);
+        when(mockCalendar.get(Calendar.HOUR)).thenReturn(0);
+
+        try (MockedStatic<Calendar> calendarStatic = mockStatic(Calendar.class)) {
+            calendarStatic.when(Calendar::getInstance).thenReturn(mockCalendar);
+
+            // The cached bitmap is shared, so callers get their own even when it isn't rotated
+            Bitmap result = BitmapUtils.getHourAsBitmap(context, android.R.drawable.btn_star, 48, false);
+            Bitmap cached = ResourceBitmapCache.get(context, android.R.drawable.btn_star, 48, 48, Bitmap.Config.ARGB_8888, false);
+            assertNotSame(cached, result);
+            assertTrue(result.isMutable());
+            result.recycle();
+            assertFalse(cached.isRecycled());
+        }
+        ResourceBitmapCache.clear();
+    }
+
+    @Test
+    public void testGetHandAsBitmapAtSize() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Bitmap hour = BitmapUtils.getHourAsBitmap(context, android.R.drawable.btn_star, 48, false);
+        Bitmap minute = BitmapUtils.getMinuteAsBitmap(context, android.R.drawable.btn_star, 48, true);
+        Bitmap second = BitmapUtils.getSecondAsBitmap(context, android.R.drawable.btn_star, 48, false);
+        for (Bitmap bitmap : new Bitmap[] { hour, minute, second }) {
+            assertEquals(48, bitmap.getWidth());
+            assertEquals(48, bitmap.getHeight());
+        }
+        ResourceBitmapCache.clear();
+    }
+
     @Test
     public void testRotateZeroDegrees() {
         Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
@@ -148,6 +185,62 @@ public class BitmapUtilsTest {
         assertEquals(100, result.getHeight());
     }
 
+    @Test
+    public void testRotateIntoTarget() {
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap target = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        assertSame(target, BitmapUtils.rotate(bitmap, 45f, target));
+        assertSame(target, BitmapUtils.rotate(bitmap, 0f, target));
+    }
+
+    @Test
+    public void testRotateIntoPooledTarget() {
+        BitmapPool.clear();
+        Bitmap pooled = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        BitmapPool.recycle(pooled);
+
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        assertSame(pooled, BitmapUtils.rotate(bitmap, 90f, null));
+        assertEquals(0, BitmapPool.size());
+    }
+
+    @Test
+    public void testFlattenIntoTarget() {
+        Bitmap bitmap1 = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        Bitmap bitmap2 = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        Bitmap target = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        assertSame(target, BitmapUtils.flattenInto(target, bitmap1, null, bitmap2));
+
+        BitmapPool.clear();
+        Bitmap result = BitmapUtils.flattenInto(null, bitmap1, bitmap2);
+        assertEquals(200, result.getWidth());
+        assertEquals(100, result.getHeight());
+        assertTrue(result.isMutable());
+    }
+
+    @Test
+    public void testComposeHands() {
+        Bitmap dial = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap hand = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap target = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR, 3);
+        calendar.set(Calendar.MINUTE, 15);
+        calendar.set(Calendar.SECOND, 30);
+
+        assertSame(target, BitmapUtils.composeHands(target, dial, hand, hand, hand, calendar));
+        assertSame(target, BitmapUtils.composeHands(target, null, hand, hand, null, calendar));
+
+        BitmapPool.clear();
+        Bitmap result = BitmapUtils.composeHands(null, null, hand, hand, null, calendar);
+        assertNotNull(result);
+        assertEquals(100, result.getWidth());
+        assertEquals(100, result.getHeight());
+
+        assertNull(BitmapUtils.composeHands(null, null, null, null, null, calendar));
+    }
+
     @Test
     public void testAsBitmapFromBitmapDrawableValid() {
         Context context = ApplicationProvider.getApplicationContext();
@@ -229,6 +322,72 @@ public class BitmapUtilsTest {
         assertEquals(200, view.getHeight());
     }
 
+    @Test
+    public void testLayoutBoundaryAvoidsRelayout() {
+        Context context = ApplicationProvider.getApplicationContext();
+        FrameLayout root = new FrameLayout(context);
+        TextView textView = new TextView(context);
+        textView.setText("12:34");
+        root.addView(textView, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT, Gravity.CENTER));
+        Rect bounds = new Rect(0, 0, 200, 200);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+
+        BitmapUtils.setLayoutBoundaryEnabled(true);
+        try {
+            BitmapUtils.resetRelayoutCount();
+            BitmapUtils.draw(root, canvas, bounds);
+            assertEquals(1, BitmapUtils.getRelayoutCount());
+            int width = textView.getWidth();
+
+            // Same sized text is measured and laid out in place
+            textView.setText("12:35");
+            assertTrue(root.isLayoutRequested());
+            BitmapUtils.draw(root, canvas, bounds);
+            assertEquals(1, BitmapUtils.getRelayoutCount());
+            assertFalse(root.isLayoutRequested());
+            assertFalse(textView.isLayoutRequested());
+            assertEquals(width, textView.getWidth());
+
+            // Text that changes size lays out the whole tree
+            textView.setText("12:35:00 PM");
+            BitmapUtils.draw(root, canvas, bounds);
+            assertEquals(2, BitmapUtils.getRelayoutCount());
+            assertFalse(root.isLayoutRequested());
+        } finally {
+            BitmapUtils.setLayoutBoundaryEnabled(false);
+        }
+
+        // Without layout boundaries, every text change lays out the whole tree
+        textView.setText("12:36:00 PM");
+        BitmapUtils.draw(root, canvas, bounds);
+        assertEquals(3, BitmapUtils.getRelayoutCount());
+    }
+
+    @Test
+    public void testDrawViewIntoTarget() {
+        Context context = ApplicationProvider.getApplicationContext();
+        View view = new View(context);
+        Rect bounds = new Rect(0, 0, 100, 200);
+
+        Bitmap target = Bitmap.createBitmap(100, 200, Bitmap.Config.ARGB_8888);
+        assertSame(target, BitmapUtils.draw(view, bounds, false, target));
+
+        // A target of the wrong size is left to the caller, and a pooled bitmap is used instead.
+        BitmapPool.clear();
+        Bitmap wrongSize = Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888);
+        Bitmap result = BitmapUtils.draw(view, bounds, false, wrongSize);
+        assertNotSame(wrongSize, result);
+        assertEquals(100, result.getWidth());
+        assertEquals(200, result.getHeight());
+        assertFalse(wrongSize.isRecycled());
+        assertEquals(0, BitmapPool.size());
+
+        // Steady state draws reuse the same pixel memory.
+        BitmapPool.recycle(result);
+        assertSame(result, BitmapUtils.draw(view, bounds, false, null));
+        BitmapPool.clear();
+    }
+
     @Test
     public void testDrawViewBounds() {
         Context context = ApplicationProvider.getApplicationContext();
@@ -322,4 +481,56 @@ public class BitmapUtilsTest {
         assertEquals(100, view.getWidth());
         assertEquals(200, view.getHeight());
     }
+
+    @Test
+    public void testCalculateInSampleSize() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = 4000;
+        options.outHeight = 3000;
+
+        assertEquals(1, BitmapUtils.calculateInSampleSize(options, 4000, 3000));
+        assertEquals(8, BitmapUtils.calculateInSampleSize(options, 450, 300));
+        assertEquals(4, BitmapUtils.calculateInSampleSize(options, 450, 450));
+        assertEquals(1, BitmapUtils.calculateInSampleSize(options, 8000, 6000));
+    }
+
+    @Test
+    public void testDecodeSampledBitmapFromBitmapIcon() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Icon icon = Icon.createWithBitmap(Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888));
+
+        Bitmap result = BitmapUtils.decodeSampledBitmap(context, icon, 50, 50);
+        assertNotNull(result);
+        assertEquals(200, result.getWidth());
+        assertEquals(100, result.getHeight());
+    }
+
+    @Test
+    public void testDecodeCenterCropLeavesIconBitmapAlone() {
+        Context context = ApplicationProvider.getApplicationContext();
+        BitmapPool.clear();
+        Bitmap source = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        Icon icon = Icon.createWithBitmap(source);
+
+        Bitmap result = BitmapUtils.decodeCenterCrop(context, icon, 50, 50);
+        assertNotNull(result);
+        assertEquals(50, result.getWidth());
+        assertEquals(50, result.getHeight());
+
+        // The icon's bitmap isn't ours, so it isn't handed to the pool
+        assertEquals(0, BitmapPool.size());
+        assertFalse(source.isRecycled());
+    }
+
+    @Test
+    public void testCenterCrop() {
+        Bitmap source = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        source.eraseColor(Color.RED);
+
+        Bitmap result = BitmapUtils.centerCrop(source, 50, 50);
+        assertEquals(50, result.getWidth());
+        assertEquals(50, result.getHeight());
+        assertEquals(Bitmap.Config.ARGB_8888, result.getConfig());
+        assertNotSame(source, result);
+    }
 }
@@ -0,0 +1,145 @@
+package com.xlythe.view.clock.utils;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class ResourceBitmapCacheTest {
+    private static final int RES = android.R.drawable.btn_star;
+
+    private Context mContext;
+    private int mOriginalMaxSizeInBytes;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mOriginalMaxSizeInBytes = ResourceBitmapCache.getMaxSizeInBytes();
+        ResourceBitmapCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        ResourceBitmapCache.setMaxSizeInBytes(mOriginalMaxSizeInBytes);
+        ResourceBitmapCache.clear();
+    }
+
+    @Test
+    public void testRasterizesAtTargetSize() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 64, 32, Bitmap.Config.ARGB_8888, false);
+        assertNotNull(bitmap);
+        assertEquals(64, bitmap.getWidth());
+        assertEquals(32, bitmap.getHeight());
+        assertEquals(Bitmap.Config.ARGB_8888, bitmap.getConfig());
+    }
+
+    @Test
+    public void testSameKeyIsCached() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.ARGB_8888, false);
+        assertSame(bitmap, ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.ARGB_8888, false));
+        assertEquals(1, ResourceBitmapCache.size());
+        assertEquals(bitmap.getAllocationByteCount(), ResourceBitmapCache.getSizeInBytes());
+    }
+
+    @Test
+    public void testDifferentKeysAreCachedSeparately() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.ARGB_8888, false);
+        assertNotSame(bitmap, ResourceBitmapCache.get(mContext, RES, 32, 32, Bitmap.Config.ARGB_8888, false));
+        assertNotSame(bitmap, ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.RGB_565, false));
+        assertNotSame(bitmap, ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.ARGB_8888, true));
+        assertEquals(4, ResourceBitmapCache.size());
+    }
+
+    @Test
+    public void testIntrinsicSize() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 0, 0, Bitmap.Config.ARGB_8888, false);
+        assertNotNull(bitmap);
+        assertSame(bitmap, ResourceBitmapCache.get(mContext, RES, -1, -1, Bitmap.Config.ARGB_8888, false));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Bitmap first = ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false);
+        ResourceBitmapCache.setMaxSizeInBytes(first.getAllocationByteCount() * 2);
+        Bitmap second = ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, true);
+
+        // Touch the first bitmap, so that the second is the least recently used
+        assertSame(first, ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false));
+        ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.RGB_565, false);
+
+        assertEquals(2, ResourceBitmapCache.size());
+        assertSame(first, ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false));
+        assertNotSame(second, ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, true));
+    }
+
+    @Test
+    public void testIntrinsicSizeUsesConfig() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 0, 0, Bitmap.Config.RGB_565, false);
+        assertNotNull(bitmap);
+        assertEquals(Bitmap.Config.RGB_565, bitmap.getConfig());
+    }
+
+    @Test
+    public void testConfigurationIsPartOfKey() {
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, RES, 64, 64, Bitmap.Config.ARGB_8888, false);
+
+        Configuration configuration = new Configuration(mContext.getResources().getConfiguration());
+        configuration.uiMode = Configuration.UI_MODE_NIGHT_YES | Configuration.UI_MODE_TYPE_NORMAL;
+        Context nightContext = mContext.createConfigurationContext(configuration);
+        assertNotSame(bitmap, ResourceBitmapCache.get(nightContext, RES, 64, 64, Bitmap.Config.ARGB_8888, false));
+    }
+
+    @Test
+    public void testConfigurationChangeClearsCache() {
+        ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false);
+
+        Application application = ApplicationProvider.getApplicationContext();
+        application.onConfigurationChanged(new Configuration(mContext.getResources().getConfiguration()));
+        assertEquals(0, ResourceBitmapCache.size());
+
+        ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false);
+        application.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, ResourceBitmapCache.size());
+    }
+
+    @Test
+    public void testDrawablesAreCachedByConstantState() {
+        Drawable drawable = mContext.getDrawable(RES);
+        drawable.setBounds(1, 2, 3, 4);
+        Bitmap bitmap = ResourceBitmapCache.get(mContext, drawable, 64, 32, Bitmap.Config.ARGB_8888, false);
+        assertEquals(64, bitmap.getWidth());
+        assertEquals(32, bitmap.getHeight());
+        assertEquals(new Rect(1, 2, 3, 4), drawable.getBounds());
+
+        // Drawables loaded from the same resource share their constant state.
+        assertSame(bitmap, ResourceBitmapCache.get(mContext, mContext.getDrawable(RES), 64, 32, Bitmap.Config.ARGB_8888, false));
+        assertNotSame(bitmap, ResourceBitmapCache.get(mContext, mContext.getDrawable(RES).mutate(), 64, 32, Bitmap.Config.ARGB_8888, false));
+    }
+
+    @Test
+    public void testClear() {
+        ResourceBitmapCache.get(mContext, RES, 10, 10, Bitmap.Config.ARGB_8888, false);
+        ResourceBitmapCache.clear();
+        assertEquals(0, ResourceBitmapCache.size());
+        assertEquals(0, ResourceBitmapCache.getSizeInBytes());
+    }
+}
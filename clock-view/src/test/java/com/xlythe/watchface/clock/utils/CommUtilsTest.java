@@ -5,25 +5,45 @@ import android.app.Application;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Looper;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataRequest;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,6 +56,9 @@ public class CommUtilsTest {
     @Before
     public void setUp() {
         mContext = ApplicationProvider.getApplicationContext();
+        CommUtils.clearPendingWrites();
+        CommUtils.setFlushInterval(100);
+        CommUtils.clearCache();
     }
 
     @Test
@@ -44,6 +67,41 @@ public class CommUtilsTest {
         Thread.sleep(100); // Allow background executor to process
     }
 
+    @Test
+    public void testWithTimeoutIsIsolatedPerTask() {
+        TaskCompletionSource<Integer> slowNode = new TaskCompletionSource<>();
+        TaskCompletionSource<Integer> fastNode = new TaskCompletionSource<>();
+        Task<Integer> slowTask = CommUtils.withTimeout(slowNode.getTask(), 1000);
+        Task<Integer> fastTask = CommUtils.withTimeout(fastNode.getTask(), 1000);
+        Task<Void> combinedTask = Tasks.whenAll(slowTask, fastTask);
+
+        // The fast node completes without waiting on the slow one
+        fastNode.setResult(1);
+        Shadows.shadowOf(Looper.getMainLooper()).idle();
+        assertTrue(fastTask.isSuccessful());
+        assertEquals(Integer.valueOf(1), fastTask.getResult());
+        assertFalse(slowTask.isComplete());
+        assertFalse(combinedTask.isComplete());
+
+        // The slow node times out on its own
+        Shadows.shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000));
+        assertTrue(slowTask.isComplete());
+        assertTrue(slowTask.getException() instanceof TimeoutException);
+        assertTrue(combinedTask.isComplete());
+    }
+
+    @Test
+    public void testWithTimeoutForwardsFailures() {
+        TaskCompletionSource<Integer> node = new TaskCompletionSource<>();
+        Task<Integer> task = CommUtils.withTimeout(node.getTask(), 1000);
+
+        IllegalStateException exception = new IllegalStateException();
+        node.setException(exception);
+        Shadows.shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(exception, task.getException());
+    }
+
     @Test
     public void testPutWithActivityContext() throws Exception {
         Activity mockActivity = mock(Activity.class);
@@ -68,6 +126,136 @@ public class CommUtilsTest {
         callbacks.onActivityDestroyed(mockActivity);
     }
 
+    @Test
+    public void testPutCoalescesWrites() {
+        CommUtils.put(mContext, "key", "first");
+        CommUtils.put(mContext, "other_key", "value");
+        CommUtils.put(mContext, "key", "second");
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("key", "second");
+        expected.put("other_key", "value");
+        assertEquals(expected, CommUtils.getPendingWrites());
+    }
+
+    @Test
+    public void testPutIsFlushedAfterInterval() throws Exception {
+        CommUtils.setFlushInterval(500);
+        CommUtils.put(mContext, "key", "value");
+
+        Shadows.shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(499));
+        assertFalse(CommUtils.getPendingWrites().isEmpty());
+
+        Shadows.shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!CommUtils.getPendingWrites().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(CommUtils.getPendingWrites().isEmpty());
+    }
+
+    @Test
+    public void testFlushSendsOneItemPerKey() {
+        DataMap nested = new DataMap();
+        nested.putInt("inner", 1);
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("string", "value");
+        values.put("int", 42);
+        values.put("map", nested);
+
+        List<PutDataRequest> requests = CommUtils.createRequests(values);
+        assertEquals(3, requests.size());
+
+        // Strings are sent as raw bytes, so that older versions can still read them
+        assertEquals("/string", requests.get(0).getUri().getPath());
+        assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), requests.get(0).getData());
+
+        // Typed values are sent as a DataMap
+        assertEquals("/int", requests.get(1).getUri().getPath());
+        assertEquals("/map", requests.get(2).getUri().getPath());
+        assertEquals(42, CommUtils.getInt(createDataEvents(values), "int", 0));
+    }
+
+    /** Returns the data events that sending the given values would cause. */
+    private static DataEventBuffer createDataEvents(Map<String, Object> values) {
+        List<DataEvent> events = new ArrayList<>();
+        for (PutDataRequest request : CommUtils.createRequests(values)) {
+            events.add(createDataEvent(request.getUri().getPath(), request.getData()));
+        }
+        DataEventBuffer mockBuffer = mock(DataEventBuffer.class);
+        when(mockBuffer.iterator()).thenAnswer(invocation -> events.iterator());
+        return mockBuffer;
+    }
+
+    private static DataEvent createDataEvent(String path, byte[] data) {
+        DataEvent mockEvent = mock(DataEvent.class);
+        DataItem mockDataItem = mock(DataItem.class);
+
+        Uri uri = new Uri.Builder().scheme("wear").authority("node").path(path).build();
+        when(mockDataItem.getUri()).thenReturn(uri);
+        when(mockDataItem.getData()).thenReturn(data);
+        when(mockDataItem.getAssets()).thenReturn(Collections.emptyMap());
+        when(mockDataItem.freeze()).thenReturn(mockDataItem);
+        when(mockEvent.getDataItem()).thenReturn(mockDataItem);
+        return mockEvent;
+    }
+
+    @Test
+    public void testPutTypedValues() {
+        DataMap nested = new DataMap();
+        nested.putInt("inner", 1);
+
+        CommUtils.put(mContext, "int", 42);
+        CommUtils.put(mContext, "float", 1.5f);
+        CommUtils.put(mContext, "boolean", true);
+        CommUtils.put(mContext, "bytes", new byte[] { 1, 2, 3 });
+        CommUtils.put(mContext, "map", nested);
+
+        Map<String, Object> pendingWrites = CommUtils.getPendingWrites();
+        assertEquals(42, pendingWrites.get("int"));
+        assertEquals(1.5f, pendingWrites.get("float"));
+        assertEquals(true, pendingWrites.get("boolean"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) pendingWrites.get("bytes"));
+        assertEquals(1, ((DataMap) pendingWrites.get("map")).getInt("inner"));
+    }
+
+    @Test
+    public void testGetTypedValuesFromDataEventBuffer() {
+        DataMap nested = new DataMap();
+        nested.putInt("inner", 1);
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("int", 42);
+        values.put("float", 1.5f);
+        values.put("boolean", true);
+        values.put("bytes", new byte[] { 1, 2, 3 });
+        values.put("map", nested);
+        DataEventBuffer buffer = createDataEvents(values);
+
+        assertEquals(42, CommUtils.getInt(buffer, "int", 0));
+        assertEquals(1.5f, CommUtils.getFloat(buffer, "float", 0f), 0f);
+        assertTrue(CommUtils.getBoolean(buffer, "boolean", false));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, CommUtils.getByteArray(buffer, "bytes"));
+        assertEquals(1, CommUtils.getDataMap(buffer, "map").getInt("inner"));
+        assertEquals(7, CommUtils.getInt(buffer, "missing", 7));
+
+        // Typed values can still be read as strings
+        assertEquals("42", CommUtils.get(buffer, "int"));
+    }
+
+    @Test
+    public void testGetTypedValuesFromStrings() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("int", "42");
+        values.put("boolean", "true");
+        values.put("empty", "com.xlythe.watchface.clock.utils.EMPTY_VALUE");
+        DataEventBuffer buffer = createDataEvents(values);
+
+        assertEquals(42, CommUtils.getInt(buffer, "int", 0));
+        assertTrue(CommUtils.getBoolean(buffer, "boolean", false));
+        assertNull(CommUtils.getValue(buffer, "empty"));
+        assertEquals(7, CommUtils.getInt(buffer, "empty", 7));
+    }
+
     @Test
     public void testGetWithCallback() throws Exception {
         CommUtils.Callback mockCallback = mock(CommUtils.Callback.class);
@@ -75,6 +263,70 @@ public class CommUtilsTest {
         Thread.sleep(100); // Allow background executor to process
     }
 
+    @Test
+    public void testGetCachedValue() {
+        CommUtils.putCachedValue("test_key", "test_value");
+        CommUtils.Callback mockCallback = mock(CommUtils.Callback.class);
+
+        // Cached reads on the main thread return right away
+        CommUtils.get(mContext, "test_key", mockCallback);
+        verify(mockCallback).onCallback("test_value");
+        assertEquals(1, CommUtils.getCacheHitCount());
+        assertEquals(0, CommUtils.getCacheMissCount());
+    }
+
+    @Test
+    public void testGetCachedTypedValue() {
+        CommUtils.putCachedValue("test_key", 42);
+        CommUtils.ValueCallback mockCallback = mock(CommUtils.ValueCallback.class);
+
+        CommUtils.getValue(mContext, "test_key", mockCallback);
+        verify(mockCallback).onCallback(42);
+    }
+
+    @Test
+    public void testPutDropsCachedValue() {
+        CommUtils.putCachedValue("test_key", "old_value");
+        CommUtils.put(mContext, "test_key", "new_value");
+
+        // Reads go to the first connected device, so our own put isn't served from memory
+        CommUtils.Callback mockCallback = mock(CommUtils.Callback.class);
+        CommUtils.get(mContext, "test_key", mockCallback);
+        verify(mockCallback, never()).onCallback(any());
+        assertEquals(0, CommUtils.getCacheHitCount());
+        assertEquals(1, CommUtils.getCacheMissCount());
+    }
+
+    @Test
+    public void testLargePutsAreNotLimitedByOtherKeys() {
+        // Every key is its own data item, so each may use the data layer's full 100KB
+        CommUtils.put(mContext, "first_key", new byte[60 * 1024]);
+        CommUtils.put(mContext, "second_key", new byte[60 * 1024]);
+        assertEquals(2, CommUtils.getPendingWrites().size());
+    }
+
+    @Test
+    public void testGetCacheMiss() {
+        CommUtils.get(mContext, "test_key", mock(CommUtils.Callback.class));
+
+        assertEquals(0, CommUtils.getCacheHitCount());
+        assertEquals(1, CommUtils.getCacheMissCount());
+    }
+
+    @Test
+    public void testDataChangeDropsCachedValues() {
+        CommUtils.putCachedValue("test_key", "test_value");
+        CommUtils.putCachedValue("other_key", "other_value");
+
+        // A change only drops the key that changed
+        CommUtils.onDataChanged(createDataEvents(Collections.singletonMap("test_key", "new_value")));
+
+        CommUtils.get(mContext, "test_key", mock(CommUtils.Callback.class));
+        CommUtils.get(mContext, "other_key", mock(CommUtils.Callback.class));
+        assertEquals(1, CommUtils.getCacheHitCount());
+        assertEquals(1, CommUtils.getCacheMissCount());
+    }
+
     @Test
     public void testGetFromDataEventBuffer() {
         DataEventBuffer mockBuffer = mock(DataEventBuffer.class);
@@ -0,0 +1,127 @@
+package com.xlythe.watchface.clock.utils;
+
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.android.gms.wearable.CapabilityClient;
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class NodeCacheTest {
+    private NodeClient mNodeClient;
+    private CapabilityClient mCapabilityClient;
+    private Node mNode;
+    private NodeCache mNodeCache;
+
+    @Before
+    public void setUp() {
+        mNodeClient = mock(NodeClient.class);
+        mCapabilityClient = mock(CapabilityClient.class);
+        mNode = mock(Node.class);
+        when(mNode.getId()).thenReturn("node_id");
+        when(mNodeClient.getConnectedNodes()).thenReturn(Tasks.forResult(Collections.singletonList(mNode)));
+        mNodeCache = new NodeCache(mNodeClient, mCapabilityClient, 1000);
+    }
+
+    private static void idle() {
+        Shadows.shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void testConnectedNodesAreCached() {
+        Task<List<Node>> task = mNodeCache.getConnectedNodes();
+        idle();
+        assertEquals(Collections.singletonList(mNode), task.getResult());
+
+        // Hits don't ask the node client again
+        task = mNodeCache.getConnectedNodes();
+        assertTrue(task.isComplete());
+        assertEquals(Collections.singletonList(mNode), task.getResult());
+        verify(mNodeClient, times(1)).getConnectedNodes();
+    }
+
+    @Test
+    public void testInvalidate() {
+        mNodeCache.getConnectedNodes();
+        idle();
+
+        mNodeCache.invalidate();
+        mNodeCache.getConnectedNodes();
+        idle();
+
+        verify(mNodeClient, times(2)).getConnectedNodes();
+    }
+
+    @Test
+    public void testCapabilityChangeRefreshesNodes() {
+        ArgumentCaptor<CapabilityClient.OnCapabilityChangedListener> captor = ArgumentCaptor.forClass(CapabilityClient.OnCapabilityChangedListener.class);
+        verify(mCapabilityClient).addListener(captor.capture(), any(Uri.class), anyInt());
+        mNodeCache.getConnectedNodes();
+        idle();
+
+        // A second device connects
+        Node node = mock(Node.class);
+        when(mNodeClient.getConnectedNodes()).thenReturn(Tasks.forResult(Arrays.asList(mNode, node)));
+        captor.getValue().onCapabilityChanged(mock(CapabilityInfo.class));
+        idle();
+
+        Task<List<Node>> task = mNodeCache.getConnectedNodes();
+        assertTrue(task.isComplete());
+        assertEquals(Arrays.asList(mNode, node), task.getResult());
+    }
+
+    @Test
+    public void testNoConnectedNodesIsAMiss() {
+        when(mNodeClient.getConnectedNodes()).thenReturn(Tasks.forResult(Collections.emptyList()));
+        mNodeCache.getConnectedNodes();
+        idle();
+
+        // A device that doesn't advertise any capabilities connects, without a capability change
+        when(mNodeClient.getConnectedNodes()).thenReturn(Tasks.forResult(Collections.singletonList(mNode)));
+        Task<List<Node>> task = mNodeCache.getConnectedNodes();
+        idle();
+
+        assertEquals(Collections.singletonList(mNode), task.getResult());
+        verify(mNodeClient, times(2)).getConnectedNodes();
+    }
+
+    @Test
+    public void testLocalNodeIsCached() {
+        when(mNodeClient.getLocalNode()).thenReturn(Tasks.forResult(mNode));
+
+        mNodeCache.getLocalNode();
+        idle();
+        Task<Node> task = mNodeCache.getLocalNode();
+
+        assertTrue(task.isComplete());
+        assertEquals(mNode, task.getResult());
+        verify(mNodeClient, times(1)).getLocalNode();
+    }
+}
@@ -6,11 +6,20 @@ import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.widget.AnalogClock;
+import android.widget.ImageView;
 import android.widget.RemoteViews;
+import android.widget.TextClock;
 import android.widget.TextView;
 
 import androidx.annotation.Nullable;
@@ -19,6 +28,9 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.xlythe.view.clock.ClockView;
 import com.xlythe.view.clock.R;
+import com.xlythe.view.clock.utils.BitmapPool;
+import com.xlythe.view.clock.utils.BitmapUtils;
+import com.xlythe.view.clock.utils.ResourceBitmapCache;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -30,13 +42,17 @@ import org.robolectric.shadows.ShadowAlarmManager;
 import org.robolectric.shadows.ShadowAppWidgetManager;
 import org.robolectric.shadows.ShadowPendingIntent;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Method;
+import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -60,6 +76,58 @@ public class ClockWidgetTest {
         }
     }
 
+    private static class AnalogTestClockView extends ClockView {
+        public AnalogTestClockView(Context context, boolean hasMinuteHand) {
+            super(context);
+            ImageView hours = new ImageView(context);
+            hours.setId(R.id.clock_hours);
+            hours.setImageDrawable(new ColorDrawable(Color.BLACK));
+            addView(hours);
+            if (hasMinuteHand) {
+                ImageView minutes = new ImageView(context);
+                minutes.setId(R.id.clock_minutes);
+                minutes.setImageDrawable(new ColorDrawable(Color.BLACK));
+                addView(minutes);
+            }
+            onFinishInflate();
+        }
+    }
+
+    private static class DigitalSystemClockWidget extends ClockWidget {
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            return new TestClockView(context);
+        }
+
+        @Override
+        public WidgetMode getWidgetMode(Context context) {
+            return WidgetMode.SYSTEM_CLOCK;
+        }
+    }
+
+    private static class SecondsSystemClockWidget extends DigitalSystemClockWidget {
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            ClockView clockView = new TestClockView(context);
+            clockView.setSecondsEnabled(true);
+            return clockView;
+        }
+    }
+
+    private static class AnalogSystemClockWidget extends DigitalSystemClockWidget {
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            return convertView != null ? convertView : new AnalogTestClockView(context, true);
+        }
+    }
+
+    private static class HourHandSystemClockWidget extends DigitalSystemClockWidget {
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            return new AnalogTestClockView(context, false);
+        }
+    }
+
     private static class TestClockWidget extends ClockWidget {
         @Override
         public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
@@ -67,6 +135,54 @@ public class ClockWidgetTest {
         }
     }
 
+    private static class CachingClockWidget extends ClockWidget {
+        int mCreatedViews = 0;
+        @Nullable Context mLastContext;
+
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            mLastContext = context;
+            ClockView clockView = convertView;
+            if (clockView == null) {
+                clockView = new TestClockView(context);
+                mCreatedViews++;
+            }
+            clockView.setDigitalEnabled(true);
+            clockView.setTime(ZonedDateTime.parse("2026-05-14T10:15:30+00:00[UTC]"));
+            return clockView;
+        }
+    }
+
+    private static class RenderAheadClockWidget extends CachingClockWidget {
+        @Override
+        public int getRenderAheadMinutes(Context context) {
+            return 5;
+        }
+    }
+
+    private static class OpaqueClockWidget extends ClockWidget {
+        @Override
+        public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
+            ClockView clockView = new TestClockView(context);
+            clockView.setBackground(new ColorDrawable(Color.BLACK));
+            return clockView;
+        }
+    }
+
+    private static class SmallBitmapClockWidget extends TestClockWidget {
+        @Override
+        public int getMaxBitmapBytes(Context context) {
+            return 50 * 50 * 4;
+        }
+    }
+
+    private static class BatchedClockWidget extends TestClockWidget {
+        @Override
+        public long getUpdateWindowMillis(Context context) {
+            return 15 * 60 * 1000;
+        }
+    }
+
     private static class NullClockWidget extends ClockWidget {
         @Override
         public ClockView onCreateClockView(Context context, @Nullable ClockView convertView, int appWidgetId) {
@@ -95,6 +211,8 @@ public class ClockWidgetTest {
         mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
         mShadowAlarmManager = Shadows.shadowOf(mAlarmManager);
         mWidget = new TestClockWidget();
+        ClockWidget.clearClockViewCache();
+        ClockWidget.clearWidgetSizeCache();
     }
 
     private void setHasScheduleExactAlarm(ShadowAlarmManager shadowAlarmManager, boolean hasPermission) {
@@ -140,6 +258,229 @@ public class ClockWidgetTest {
         assertNotNull(mShadowAppWidgetManager.getViewFor(id));
     }
 
+    @Test
+    public void testOnUpdateReusesPooledBitmap() {
+        BitmapPool.clear();
+        int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+
+        mWidget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        assertEquals(1, BitmapPool.size());
+        int sizeInBytes = BitmapPool.getSizeInBytes();
+
+        // Steady state updates draw into the same bitmap
+        mWidget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        assertEquals(1, BitmapPool.size());
+        assertEquals(sizeInBytes, BitmapPool.getSizeInBytes());
+        BitmapPool.clear();
+    }
+
+    @Test
+    public void testOpaqueClockIsDrawnWithoutAlpha() {
+        BitmapPool.clear();
+        int clockSize = mContext.getResources().getDimensionPixelSize(R.dimen.default_clock_size);
+        int id = mShadowAppWidgetManager.createWidget(OpaqueClockWidget.class, R.layout.clock_widget);
+
+        new OpaqueClockWidget().onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        assertEquals(1, BitmapPool.size());
+
+        // The pooled bitmap is the one that was sent
+        Bitmap bitmap = BitmapPool.obtain(clockSize, clockSize, Bitmap.Config.RGB_565);
+        assertEquals(0, BitmapPool.size());
+        assertEquals(Bitmap.Config.RGB_565, bitmap.getConfig());
+    }
+
+    @Test
+    public void testLargeWidgetIsScaledDown() {
+        int id = mShadowAppWidgetManager.createWidget(SmallBitmapClockWidget.class, R.layout.clock_widget);
+        long bytesSent = ClockWidget.getBytesSent();
+
+        new SmallBitmapClockWidget().onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        long bytes = ClockWidget.getBytesSent() - bytesSent;
+        assertTrue(bytes > 0);
+        assertTrue(bytes <= 50 * 50 * 4);
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id));
+    }
+
+    @Test
+    public void testTicksSendOnlyTheBitmap() {
+        int clockSize = mContext.getResources().getDimensionPixelSize(R.dimen.default_clock_size);
+        int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+        long bytesSent = ClockWidget.getBytesSent();
+
+        Intent intent = new Intent(ClockWidget.ACTION_CLOCK_WIDGET_UPDATE);
+        intent.putExtra(ClockWidget.EXTRA_APP_WIDGET_ID, id);
+        mWidget.onReceive(mContext, intent);
+
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id));
+        assertEquals(clockSize * clockSize * 4, ClockWidget.getBytesSent() - bytesSent);
+    }
+
+    @Test
+    public void testClockViewsAreCachedPerSize() {
+        CachingClockWidget widget = new CachingClockWidget();
+        int[] appWidgetIds = new int[4];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            appWidgetIds[i] = mShadowAppWidgetManager.createWidget(CachingClockWidget.class, R.layout.clock_widget);
+
+            // Two widgets of each size
+            int dp = i % 2 == 0 ? 100 : 150;
+            Bundle bundle = new Bundle();
+            bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, dp);
+            bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH, dp);
+            bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, dp);
+            bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, dp);
+            widget.setWidgetSize(mContext, appWidgetIds[i], bundle);
+        }
+
+        BitmapUtils.resetRelayoutCount();
+        widget.onUpdate(mContext, mAppWidgetManager, appWidgetIds);
+        assertEquals(2, widget.mCreatedViews);
+        assertEquals(2, BitmapUtils.getRelayoutCount());
+
+        // Later updates reuse the views, already laid out for their size
+        widget.onUpdate(mContext, mAppWidgetManager, appWidgetIds);
+        assertEquals(2, widget.mCreatedViews);
+        assertEquals(2, BitmapUtils.getRelayoutCount());
+        for (int appWidgetId : appWidgetIds) {
+            assertNotNull(mShadowAppWidgetManager.getViewFor(appWidgetId));
+        }
+
+        // Disabling the widget drops the cache
+        widget.onDisabled(mContext);
+        widget.onUpdate(mContext, mAppWidgetManager, appWidgetIds);
+        assertEquals(4, widget.mCreatedViews);
+    }
+
+    @Test
+    public void testSystemClockDigital() {
+        DigitalSystemClockWidget widget = new DigitalSystemClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(DigitalSystemClockWidget.class, R.layout.clock_widget);
+
+        widget.onEnabled(mContext);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        assertTrue(mShadowAppWidgetManager.getViewFor(id) instanceof TextClock);
+        TextClock textClock = (TextClock) mShadowAppWidgetManager.getViewFor(id);
+        assertEquals("hh:mm", textClock.getFormat12Hour().toString());
+        assertEquals("HH:mm", textClock.getFormat24Hour().toString());
+        assertTrue(mShadowAlarmManager.getScheduledAlarms().isEmpty());
+    }
+
+    @Test
+    public void testSystemClockDigitalShowsSeconds() {
+        SecondsSystemClockWidget widget = new SecondsSystemClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(SecondsSystemClockWidget.class, R.layout.clock_widget);
+
+        widget.onEnabled(mContext);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        TextClock textClock = (TextClock) mShadowAppWidgetManager.getViewFor(id);
+        assertEquals("hh:mm:ss", textClock.getFormat12Hour().toString());
+        assertEquals("HH:mm:ss", textClock.getFormat24Hour().toString());
+    }
+
+    @Test
+    public void testSystemClockAnalog() {
+        ResourceBitmapCache.clear();
+        AnalogSystemClockWidget widget = new AnalogSystemClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(AnalogSystemClockWidget.class, R.layout.clock_widget);
+
+        widget.onEnabled(mContext);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        assertTrue(mShadowAppWidgetManager.getViewFor(id) instanceof AnalogClock);
+        assertTrue(mShadowAlarmManager.getScheduledAlarms().isEmpty());
+
+        // The hands are rasterized once, and sent again from the cache.
+        int cachedBitmaps = ResourceBitmapCache.size();
+        assertTrue(cachedBitmaps >= 2);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        assertEquals(cachedBitmaps, ResourceBitmapCache.size());
+        ResourceBitmapCache.clear();
+    }
+
+    @Test
+    public void testSystemClockFallsBackToBitmap() {
+        setHasScheduleExactAlarm(mShadowAlarmManager, true);
+
+        // Without a minute hand, there's nothing to give AnalogClock
+        HourHandSystemClockWidget widget = new HourHandSystemClockWidget();
+        widget.onEnabled(mContext);
+        assertTrue(mShadowAlarmManager.getScheduledAlarms().isEmpty());
+
+        int id = mShadowAppWidgetManager.createWidget(HourHandSystemClockWidget.class, R.layout.clock_widget);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        assertTrue(mShadowAppWidgetManager.getViewFor(id) instanceof ImageView);
+        assertFalse(mShadowAlarmManager.getScheduledAlarms().isEmpty());
+    }
+
+    @Test
+    public void testSystemClockFallbackTicksWithoutExactAlarms() {
+        setHasScheduleExactAlarm(mShadowAlarmManager, false);
+
+        HourHandSystemClockWidget widget = new HourHandSystemClockWidget();
+        widget.onEnabled(mContext);
+        int id = mShadowAppWidgetManager.createWidget(HourHandSystemClockWidget.class, R.layout.clock_widget);
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+
+        // Nothing was scheduled when the widget was added, so the fallback repeats on its own
+        ShadowAlarmManager.ScheduledAlarm alarm = mShadowAlarmManager.getScheduledAlarms().get(0);
+        assertEquals(60 * 1000, alarm.interval);
+    }
+
+    @Test
+    public void testCachedViewsUseApplicationContext() {
+        CachingClockWidget widget = new CachingClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(CachingClockWidget.class, R.layout.clock_widget);
+
+        widget.onUpdate(new ContextWrapper(mContext), mAppWidgetManager, new int[]{id});
+        assertSame(mContext.getApplicationContext(), widget.mLastContext);
+    }
+
+    @Test
+    public void testRenderAhead() throws Exception {
+        RenderAheadClockWidget widget = new RenderAheadClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(RenderAheadClockWidget.class, R.layout.clock_widget);
+        WidgetFrameCache cache = new WidgetFrameCache(mContext, id);
+
+        // The current frame is drawn right away, and the rest are rendered in the background
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id));
+        ClockWidget.awaitBatches();
+        assertTrue(cache.exists());
+
+        // Frames are dropped along with the widget
+        widget.onDeleted(mContext, new int[]{id});
+        assertFalse(cache.exists());
+    }
+
+    @Test
+    public void testRenderAheadFramesAreDroppedOnUpdateAndTimeChange() throws Exception {
+        RenderAheadClockWidget widget = new RenderAheadClockWidget();
+        int id = mShadowAppWidgetManager.createWidget(RenderAheadClockWidget.class, R.layout.clock_widget);
+        WidgetFrameCache cache = new WidgetFrameCache(mContext, id);
+        long minute = System.currentTimeMillis() / (60 * 1000);
+        Bitmap target = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        cache.write(minute, "stale", createFrame());
+        widget.onUpdate(mContext, mAppWidgetManager, new int[]{id});
+        ClockWidget.awaitBatches();
+        assertFalse(cache.load(minute, "stale", target));
+
+        cache.write(minute, "stale", createFrame());
+        widget.onReceive(mContext, new Intent(Intent.ACTION_TIME_CHANGED));
+        assertFalse(cache.load(minute, "stale", target));
+        widget.onDeleted(mContext, new int[]{id});
+    }
+
+    private static List<byte[]> createFrame() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).compress(Bitmap.CompressFormat.PNG, 100, out);
+        return Collections.singletonList(out.toByteArray());
+    }
+
     @Test
     public void testOnUpdateExceptionHandling() {
         int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
@@ -176,6 +517,27 @@ public class ClockWidgetTest {
         assertFalse(mShadowAlarmManager.getScheduledAlarms().isEmpty());
     }
 
+    @Test
+    public void testOnReceiveClockWidgetUpdateAsync() throws InterruptedException {
+        int id1 = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+        int id2 = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+
+        // Broadcasts dispatched by the system can be finished asynchronously
+        mContext.registerReceiver(mWidget, new IntentFilter(ClockWidget.ACTION_CLOCK_WIDGET_UPDATE), Context.RECEIVER_NOT_EXPORTED);
+        mContext.sendBroadcast(new Intent(ClockWidget.ACTION_CLOCK_WIDGET_UPDATE).setPackage(mContext.getPackageName()));
+        Shadows.shadowOf(Looper.getMainLooper()).idle();
+        assertFalse(mShadowAlarmManager.getScheduledAlarms().isEmpty());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((mShadowAppWidgetManager.getViewFor(id1) == null || mShadowAppWidgetManager.getViewFor(id2) == null)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id1));
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id2));
+        mContext.unregisterReceiver(mWidget);
+    }
+
     @Test
     public void testOnReceiveOtherAction() {
         Intent intent = new Intent(Intent.ACTION_BOOT_COMPLETED);
@@ -208,6 +570,58 @@ public class ClockWidgetTest {
         assertEquals(0, alarm.interval); // Exact alarm has 0 interval in ShadowAlarmManager
     }
 
+    @Test
+    public void testTicksAlignToMinute() {
+        mWidget.onEnabled(mContext);
+
+        ShadowAlarmManager.ScheduledAlarm alarm = mShadowAlarmManager.getScheduledAlarms().get(0);
+        assertEquals(0, alarm.triggerAtTime % (60 * 1000));
+    }
+
+    @Test
+    public void testGetNextMinuteMillis() {
+        assertEquals(60 * 1000, ClockWidget.getNextMinuteMillis(0));
+        assertEquals(60 * 1000, ClockWidget.getNextMinuteMillis(59 * 1000));
+        assertEquals(120 * 1000, ClockWidget.getNextMinuteMillis(60 * 1000));
+    }
+
+    @Test
+    public void testUpdateWindow() {
+        // Inexact alarms don't need the exact alarm permission
+        setHasScheduleExactAlarm(mShadowAlarmManager, false);
+
+        new BatchedClockWidget().onEnabled(mContext);
+
+        ShadowAlarmManager.ScheduledAlarm alarm = mShadowAlarmManager.getScheduledAlarms().get(0);
+        assertEquals(0, alarm.triggerAtTime % (60 * 1000));
+        assertEquals(15 * 60 * 1000, alarm.windowLengthMs);
+        assertEquals(0, alarm.interval);
+    }
+
+    @Test
+    public void testOnReceiveTimeChanged() {
+        int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+
+        mWidget.onReceive(mContext, new Intent(Intent.ACTION_TIME_CHANGED));
+
+        assertNotNull(mShadowAppWidgetManager.getViewFor(id));
+        ShadowAlarmManager.ScheduledAlarm alarm = mShadowAlarmManager.getScheduledAlarms().get(0);
+        assertEquals(0, alarm.triggerAtTime % (60 * 1000));
+    }
+
+    @Test
+    public void testOnReceiveTimeZoneChangedWithoutExactAlarms() {
+        mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+        setHasScheduleExactAlarm(mShadowAlarmManager, false);
+
+        mWidget.onReceive(mContext, new Intent(Intent.ACTION_TIMEZONE_CHANGED));
+
+        // The repeating alarm is moved back onto the minute
+        ShadowAlarmManager.ScheduledAlarm alarm = mShadowAlarmManager.getScheduledAlarms().get(0);
+        assertEquals(0, alarm.triggerAtTime % (60 * 1000));
+        assertEquals(60 * 1000, alarm.interval);
+    }
+
     @Test
     public void testOnEnabledMPlusSecurityExceptionFallback() {
         setHasScheduleExactAlarm(mShadowAlarmManager, false);
@@ -264,4 +678,42 @@ public class ClockWidgetTest {
         int defaultSize = mWidget.getWidgetSize(mContext, 999);
         assertEquals(mContext.getResources().getDimensionPixelSize(R.dimen.default_clock_size), defaultSize);
     }
+
+    @Test
+    public void testWidgetSizeIsCached() {
+        int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+        Bundle bundle = new Bundle();
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 50);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH, 100);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 50);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 100);
+        mWidget.onAppWidgetOptionsChanged(mContext, mAppWidgetManager, id, bundle);
+        int size = mWidget.getWidgetSize(mContext, id);
+
+        // Lookups don't go back to the shared preferences
+        SharedPreferences preferences = mWidget.getSharedPreferences(mContext);
+        preferences.edit().clear().commit();
+        assertEquals(size, mWidget.getWidgetSize(mContext, id));
+
+        // Until the process restarts
+        preferences.edit().putInt("settings_widget_size_" + id, size + 1).commit();
+        ClockWidget.clearWidgetSizeCache();
+        assertEquals(size + 1, mWidget.getWidgetSize(mContext, id));
+    }
+
+    @Test
+    public void testOnDeletedRemovesWidgetSize() {
+        int id = mShadowAppWidgetManager.createWidget(TestClockWidget.class, R.layout.clock_widget);
+        Bundle bundle = new Bundle();
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 50);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_WIDTH, 100);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_HEIGHT, 50);
+        bundle.putInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 100);
+        mWidget.onAppWidgetOptionsChanged(mContext, mAppWidgetManager, id, bundle);
+
+        mWidget.onDeleted(mContext, new int[]{id});
+
+        assertFalse(mWidget.getSharedPreferences(mContext).contains("settings_widget_size_" + id));
+        assertEquals(mContext.getResources().getDimensionPixelSize(R.dimen.default_clock_size), mWidget.getWidgetSize(mContext, id));
+    }
 }
@@ -0,0 +1,88 @@
+package com.xlythe.widget.clock;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 34)
+public class WidgetFrameCacheTest {
+    private static final String KEY = "100x100 ARGB_8888 UTC";
+    private static final long FIRST_MINUTE = 1000;
+
+    private WidgetFrameCache mCache;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mCache = new WidgetFrameCache(context, 7);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.delete();
+    }
+
+    private static List<byte[]> createFrames(int count) {
+        List<byte[]> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).compress(Bitmap.CompressFormat.PNG, 100, out);
+            frames.add(out.toByteArray());
+        }
+        return frames;
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertFalse(mCache.exists());
+        assertFalse(mCache.load(FIRST_MINUTE, KEY, Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)));
+    }
+
+    @Test
+    public void testWriteAndDelete() {
+        mCache.write(FIRST_MINUTE, KEY, createFrames(3));
+        assertTrue(mCache.exists());
+
+        mCache.delete();
+        assertFalse(mCache.exists());
+    }
+
+    @Test
+    public void testMismatchedFramesAreNotLoaded() {
+        mCache.write(FIRST_MINUTE, KEY, createFrames(3));
+        Bitmap target = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        // Before and after the cached minutes
+        assertFalse(mCache.load(FIRST_MINUTE - 1, KEY, target));
+        assertFalse(mCache.load(FIRST_MINUTE + 3, KEY, target));
+
+        // Rendered for a different size, configuration or time zone
+        assertFalse(mCache.load(FIRST_MINUTE, KEY + "!", target));
+        assertFalse(mCache.load(FIRST_MINUTE, "", target));
+    }
+
+    @Test
+    public void testMatchingFrameIsLoaded() {
+        mCache.write(FIRST_MINUTE, KEY, createFrames(3));
+        Bitmap target = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        assertTrue(mCache.load(FIRST_MINUTE, KEY, target));
+        assertTrue(mCache.load(FIRST_MINUTE + 2, KEY, target));
+    }
+}